@@ -0,0 +1,40 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.List;
+import java.util.Map;
+
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+
+/**
+ * A Suggestion that can handle many elements at once,
+ * for back-ends that accept several identifiers in one request.
+ * Suggestions that don't implement this are run once per element
+ * by SuggestionBatch.
+ */
+public interface BatchSuggestion extends Suggestion
+{
+	/**
+	 * Make suggestions for several elements.
+	 * @param inputs elements for which canSuggest is true
+	 * @return the suggestion for each input, as doSuggestion would return it.
+	 *   Inputs for which no suggestion could be made are left out.
+	 */
+	public Map<PathwayElement, Pathway> doBatchSuggestion(List<PathwayElement> inputs) throws SuggestionException;
+}
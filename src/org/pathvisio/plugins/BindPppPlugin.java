@@ -20,6 +20,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
@@ -141,7 +143,9 @@ public class BindPppPlugin implements Suggestion
 		
 		BINDSOAPBindingStub binding;
         try {
-			binding = (BINDSOAPBindingStub) new BINDServiceLocator().getBINDSOAP();
+			// through the ReplayServer, if there is one
+			BINDServiceLocator locator = new BINDServiceLocator();
+			binding = (BINDSOAPBindingStub) locator.getBINDSOAP(new URL(HttpTransport.rewrite(locator.getBINDSOAPAddress())));
 
         
         // Time out after 120 seconds
@@ -204,6 +208,8 @@ public class BindPppPlugin implements Suggestion
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
+		} catch (MalformedURLException e1) {
+			throw new SuggestionException(e1);
 		} catch (ServiceException e1) {
 			// TODO Auto-generated catch block
 			e1.printStackTrace();
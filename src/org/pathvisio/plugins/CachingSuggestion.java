@@ -0,0 +1,173 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bridgedb.DataSource;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+
+/**
+ * Wraps a Suggestion that queries a remote source, and remembers its results
+ * in a SuggestionCache, so that asking again for the same element
+ * doesn't go back to the network.
+ * <p>
+ * Results are keyed by provider, data source, identifier and label.
+ * The provider name must be unique per source parameter, e.g.
+ * "PathwayCommons BIOGRID" and "PathwayCommons HPRD" are different providers.
+ * In offline mode, cached results of any age are returned,
+ * and the wrapped Suggestion is never called.
+ * <p>
+ * Use wrap to keep the batch capability of a BatchSuggestion.
+ */
+public class CachingSuggestion implements StreamingSuggestion
+{
+	/** default time to live of cached results: one day */
+	public static final long DEFAULT_TTL = 24L * 60 * 60 * 1000;
+
+	private final String provider;
+	private final Suggestion delegate;
+	final SuggestionCache cache;
+	private final long ttl;
+
+	/**
+	 * @param provider name of the provider, including any source parameter
+	 * @param ttl time in milliseconds after which a cached result is queried again
+	 */
+	public CachingSuggestion (String provider, Suggestion delegate, SuggestionCache cache, long ttl)
+	{
+		this.provider = provider;
+		this.delegate = delegate;
+		this.cache = cache;
+		this.ttl = ttl;
+	}
+
+	/**
+	 * Wrap suggestion in a CachingSuggestion. If it is a BatchSuggestion,
+	 * the result is one as well, that only queries the uncached elements.
+	 */
+	public static CachingSuggestion wrap (String provider, Suggestion suggestion, SuggestionCache cache, long ttl)
+	{
+		if (suggestion instanceof BatchSuggestion)
+		{
+			return new CachingBatchSuggestion(provider, (BatchSuggestion)suggestion, cache, ttl);
+		}
+		return new CachingSuggestion(provider, suggestion, cache, ttl);
+	}
+
+	public boolean canSuggest(PathwayElement input)
+	{
+		return delegate.canSuggest(input);
+	}
+
+	public Pathway doSuggestion(PathwayElement input) throws SuggestionException
+	{
+		return doSuggestion(input, null);
+	}
+
+	/**
+	 * A cached result is returned at once, without passing its spokes to sink.
+	 * Otherwise spokes are streamed if the wrapped suggestion can do so.
+	 */
+	public Pathway doSuggestion(PathwayElement input, SpokeSink sink) throws SuggestionException
+	{
+		Pathway result = getCached(input);
+		if (result != null) return result;
+		checkOnline();
+
+		if (delegate instanceof StreamingSuggestion)
+		{
+			result = ((StreamingSuggestion)delegate).doSuggestion(input, sink);
+		}
+		else
+		{
+			result = delegate.doSuggestion(input);
+		}
+		if (result != null) cache.put (getKey(input), result);
+		return result;
+	}
+
+	/** the cached result for input that is still valid, or null */
+	Pathway getCached(PathwayElement input)
+	{
+		return cache.get(getKey(input), SuggestionCache.isOffline() ? -1 : ttl);
+	}
+
+	/** @throws SuggestionException when working offline, i.e. uncached elements can't be queried */
+	void checkOnline() throws SuggestionException
+	{
+		if (SuggestionCache.isOffline())
+		{
+			throw new SuggestionException("Working offline, and " + provider + " has no cached result for this element");
+		}
+	}
+
+	String getKey(PathwayElement input)
+	{
+		DataSource ds = input.getDataSource();
+		return provider + "\t" +
+			(ds == null ? "" : ds.getSystemCode()) + "\t" +
+			input.getGeneID() + "\t" +
+			input.getTextLabel();
+	}
+
+	/** the wrapped suggestion */
+	public Suggestion getDelegate()
+	{
+		return delegate;
+	}
+
+	/**
+	 * CachingSuggestion for a BatchSuggestion. Cached elements are
+	 * answered from the cache, the others are queried in one batch.
+	 */
+	static class CachingBatchSuggestion extends CachingSuggestion implements BatchSuggestion
+	{
+		CachingBatchSuggestion (String provider, BatchSuggestion delegate, SuggestionCache cache, long ttl)
+		{
+			super (provider, delegate, cache, ttl);
+		}
+
+		public Map<PathwayElement, Pathway> doBatchSuggestion(List<PathwayElement> inputs) throws SuggestionException
+		{
+			Map<PathwayElement, Pathway> result = new HashMap<PathwayElement, Pathway>();
+			List<PathwayElement> missing = new ArrayList<PathwayElement>();
+			for (PathwayElement input : inputs)
+			{
+				Pathway cached = getCached(input);
+				if (cached != null) result.put (input, cached);
+				else missing.add (input);
+			}
+			if (missing.isEmpty()) return result;
+			if (result.isEmpty()) checkOnline();
+			else if (SuggestionCache.isOffline()) return result;
+
+			Map<PathwayElement, Pathway> fresh = ((BatchSuggestion)getDelegate()).doBatchSuggestion(missing);
+			for (Map.Entry<PathwayElement, Pathway> e : fresh.entrySet())
+			{
+				if (e.getValue() == null) continue;
+				cache.put (getKey(e.getKey()), e.getValue());
+				result.put (e.getKey(), e.getValue());
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.util.ProgressKeeper;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+import com.hp.hpl.jena.query.QueryExecution;
+
+/**
+ * Cooperative cancellation of a running suggestion.
+ * <p>
+ * Whoever runs a suggestion makes a token current for the running thread
+ * with enter and exit. Providers then get it with current(), and either
+ * check it between steps, or register a callback with onCancel that aborts
+ * blocking work, e.g. disconnects an HTTP connection or aborts a SPARQL query.
+ * HttpTransport does the latter for every request, so providers that use it
+ * stop downloading as soon as the token is cancelled.
+ * <p>
+ * When no token is current, current() returns one that is never cancelled.
+ */
+public class CancellationToken
+{
+	/** token used when none is current, can't be cancelled */
+	private static final CancellationToken NONE = new CancellationToken()
+	{
+		@Override public void cancel() {}
+
+		@Override public Registration onCancel(Runnable callback)
+		{
+			return NO_REGISTRATION;
+		}
+	};
+
+	private static final Registration NO_REGISTRATION = new Registration()
+	{
+		public void remove() {}
+	};
+
+	private static final ThreadLocal<CancellationToken> current = new ThreadLocal<CancellationToken>();
+
+	/** Handle of a callback registered with onCancel */
+	public interface Registration
+	{
+		/** remove the callback, call this when the work it aborts has finished */
+		void remove();
+	}
+
+	private volatile boolean cancelled = false;
+	private final List<Runnable> callbacks = new ArrayList<Runnable>();
+
+	/** the token of the running suggestion */
+	public static CancellationToken current()
+	{
+		CancellationToken token = current.get();
+		return token == null ? NONE : token;
+	}
+
+	/**
+	 * Make token current for this thread.
+	 * @return the previous token, pass it to exit when done
+	 */
+	public static CancellationToken enter(CancellationToken token)
+	{
+		CancellationToken previous = current.get();
+		current.set (token);
+		return previous;
+	}
+
+	/** restore the token that was current before enter */
+	public static void exit(CancellationToken previous)
+	{
+		if (previous == null) current.remove();
+		else current.set (previous);
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	/**
+	 * Cancel, and run all registered callbacks on the calling thread.
+	 * Cancelling more than once has no further effect.
+	 */
+	public void cancel()
+	{
+		List<Runnable> toRun;
+		synchronized (callbacks)
+		{
+			if (cancelled) return;
+			cancelled = true;
+			toRun = new ArrayList<Runnable>(callbacks);
+			callbacks.clear();
+		}
+		for (Runnable r : toRun)
+		{
+			try
+			{
+				r.run();
+			}
+			catch (RuntimeException ex)
+			{
+				Logger.log.warn ("Cancellation callback failed", ex);
+			}
+		}
+	}
+
+	/**
+	 * Register a callback that aborts blocking work. If the token is
+	 * already cancelled, the callback runs immediately.
+	 */
+	public Registration onCancel(final Runnable callback)
+	{
+		synchronized (callbacks)
+		{
+			if (!cancelled)
+			{
+				callbacks.add (callback);
+				return new Registration()
+				{
+					public void remove()
+					{
+						synchronized (callbacks)
+						{
+							callbacks.remove (callback);
+						}
+					}
+				};
+			}
+		}
+		callback.run();
+		return NO_REGISTRATION;
+	}
+
+	/** abort a remote SPARQL query when cancelled */
+	public Registration abortOnCancel(final QueryExecution queryExecution)
+	{
+		return onCancel(new Runnable()
+		{
+			public void run()
+			{
+				queryExecution.abort();
+			}
+		});
+	}
+
+	/**
+	 * @throws SuggestionException if the token is cancelled or the thread is interrupted
+	 */
+	public void check() throws SuggestionException
+	{
+		if (cancelled || Thread.currentThread().isInterrupted())
+		{
+			throw new SuggestionException("Cancelled");
+		}
+	}
+
+	/**
+	 * ProgressKeeper that also cancels a token, so pressing cancel
+	 * in a ProgressDialog stops the running suggestion.
+	 */
+	public static class CancellingProgressKeeper extends ProgressKeeper
+	{
+		private final CancellationToken token = new CancellationToken();
+
+		public CancellationToken getToken()
+		{
+			return token;
+		}
+
+		@Override public void cancel()
+		{
+			super.cancel();
+			token.cancel();
+		}
+	}
+}
@@ -20,10 +20,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.bridgedb.IDMapperException;
@@ -77,41 +73,7 @@ public class ConceptWikiPppPlugin extends SuggestionAdapter
 			pelt.setCopyright("Human metabolome database (http://www.hmdb.ca)");
 			pelt.setDataNodeType(input.getDataNodeType());
 
-			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
-			int noRecords = 0;
-			String aLine;
-
-			String urlString = "http://www.hmdb.ca/cgi-bin/extractor_runner.cgi?metabolites_hmdb_id="+ref.getId()+"&format=csv&select_enzymes_gene_name=on&select_enzymes_swissprot_id=on";
-			System.out.println(urlString);
-			URL url = new URL(urlString);
-			InputStream in = url.openStream();
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
-			while ((br.readLine()) != null ) {
-				noRecords += 1;
-			}
-			int row = 0;
-			in.close();
-			InputStream in2 = url.openStream();
-			BufferedReader br2 = new BufferedReader(new InputStreamReader(in2));
-			while ((aLine = br2.readLine()) != null ) {
-				String[] velden = null;
-				velden = aLine.split(",");
-				if (row >0) { //Each row except the header
-					PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
-					String swissId = velden[3];
-					System.out.println(swissId);
-					String geneName = velden[2];
-					pchildElt.setDataNodeType (DataNodeType.PROTEIN);
-					pchildElt.setTextLabel(geneName);
-					pchildElt.setDataSource (BioDataSource.UNIPROT);
-					pchildElt.setGeneID(swissId);
-					pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-					pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-					spokes.add (pchildElt);
-				}
-
-				row++; //exclude row with headings
-			}
+			List<PathwayElement> spokes = HmdbPppPlugin.getEnzymes(ref.getId());
 			Pathway result = PathwayBuilder.radialLayout(pelt, spokes);
 			return result;
 		}
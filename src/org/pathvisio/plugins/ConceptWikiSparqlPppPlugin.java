@@ -34,12 +34,7 @@ import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
@@ -48,6 +43,17 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
  */
 public class ConceptWikiSparqlPppPlugin extends SuggestionAdapter 
 {
+	/** related concepts of the concept with identifier $id */
+	private static final SparqlTemplate QUERY = new SparqlTemplate(
+			"PREFIX dcterms: <http://purl.org/dc/terms/> " +
+			"SELECT DISTINCT ?ptitle ?otitle WHERE {" +
+			" ?s dcterms:identifier $id ." +
+			"?s ?p ?o . " +
+			" ?p dcterms:title ?ptitle ." +
+			" ?o dcterms:title ?otitle ." +
+			"}" +
+			"LIMIT 10");
+
 	private GdbManager gdbManager;
 
 	public ConceptWikiSparqlPppPlugin (GdbManager gdbManager)
@@ -67,20 +73,16 @@ public class ConceptWikiSparqlPppPlugin extends SuggestionAdapter
 
 		List<PathwayElement> spokes = new ArrayList<PathwayElement>();		
 		
-		String sparqlQueryString = "PREFIX dcterms: <http://purl.org/dc/terms/> " +
-				"SELECT DISTINCT ?ptitle ?otitle WHERE {" +
-				" ?s dcterms:identifier \""+ref.getId()+"\" ." +
-						"?s ?p ?o . " +
-						" ?p dcterms:title ?ptitle ." +
-						" ?o dcterms:title ?otitle ." +
-						"}" +
-						"LIMIT 10";
-		
-		
-		System.out.println(sparqlQueryString);
-		Query query = QueryFactory.create(sparqlQueryString);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService("http://cwaapp1.liacs.nl:2020/sparql", query);
-		ResultSet resultSet = queryExecution.execSelect();
+		List<QuerySolution> solutions;
+		try
+		{
+			solutions = QUERY.select(SparqlEndpoints.get(SparqlEndpoints.Endpoint.PPP_SPARQL_CONCEPTWIKI), "id", SparqlTemplate.literal(ref.getId()));
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
+		}
+
 		PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 		pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 		pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
@@ -90,8 +92,7 @@ public class ConceptWikiSparqlPppPlugin extends SuggestionAdapter
 		pelt.setCopyright("OpenPhacts (http://www.openphacts.org");
 		pelt.setDataNodeType(input.getDataNodeType());
 
-		while (resultSet.hasNext()) {
-			QuerySolution solution = resultSet.next();
+		for (QuerySolution solution : solutions) {
 			RDFNode ptitle = solution.get("ptitle");
 			RDFNode otitle = solution.get("otitle");
 			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
@@ -0,0 +1,129 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads comma (or otherwise) separated values from a stream,
+ * and hands each row to a RowHandler as soon as it is complete.
+ * <p>
+ * Fields may be quoted with double quotes. Quoted fields can contain
+ * separators and line breaks, and "" stands for a single quote.
+ * Both \n and \r\n end a row.
+ */
+public class CsvRowParser
+{
+	/** Receives the rows of a CSV stream, in order */
+	public interface RowHandler
+	{
+		/**
+		 * @param row 0-based row number, the header (if any) is row 0
+		 * @param fields the fields of this row, never empty
+		 */
+		void row (int row, String[] fields) throws IOException;
+	}
+
+	private final char separator;
+
+	public CsvRowParser()
+	{
+		this(',');
+	}
+
+	public CsvRowParser(char separator)
+	{
+		this.separator = separator;
+	}
+
+	/**
+	 * Parse the stream until its end. Blank lines are skipped.
+	 * The reader is not closed.
+	 * @return the number of rows passed to the handler
+	 */
+	public int parse (Reader reader, RowHandler handler) throws IOException
+	{
+		Reader in = (reader instanceof BufferedReader) ? reader : new BufferedReader(reader);
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean fieldStarted = false;
+		int rows = 0;
+
+		int c;
+		while ((c = in.read()) != -1)
+		{
+			if (quoted)
+			{
+				if (c == '"')
+				{
+					in.mark(1);
+					if (in.read() == '"')
+					{
+						field.append ('"');
+					}
+					else
+					{
+						in.reset();
+						quoted = false;
+					}
+				}
+				else
+				{
+					field.append ((char)c);
+				}
+			}
+			else if (c == '"' && field.length() == 0)
+			{
+				quoted = true;
+				fieldStarted = true;
+			}
+			else if (c == separator)
+			{
+				fields.add (field.toString());
+				field.setLength(0);
+				fieldStarted = true;
+			}
+			else if (c == '\n')
+			{
+				if (fieldStarted || field.length() > 0 || !fields.isEmpty())
+				{
+					fields.add (field.toString());
+					handler.row (rows++, fields.toArray(new String[fields.size()]));
+				}
+				fields.clear();
+				field.setLength(0);
+				fieldStarted = false;
+			}
+			else if (c != '\r')
+			{
+				field.append ((char)c);
+			}
+		}
+		// last row without line break
+		if (fieldStarted || field.length() > 0 || !fields.isEmpty())
+		{
+			fields.add (field.toString());
+			handler.row (rows++, fields.toArray(new String[fields.size()]));
+		}
+		return rows;
+	}
+}
@@ -0,0 +1,292 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridgedb.Xref;
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.model.ObjectType;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+
+/**
+ * Queries a set of Suggestions at the same time and merges
+ * their spokes into a single hub-and-spoke Pathway.
+ * <p>
+ * Only sources that can suggest for the input element are queried.
+ * Each source gets its own deadline, counted from the moment it starts running.
+ * Sources that miss their deadline are cancelled and left out of the result,
+ * so the total time is bounded by the slowest source, not the sum of all of them.
+ * <p>
+ * Every source runs with its own CancellationToken, which is cancelled when
+ * it misses its deadline or when the token of the caller is cancelled.
+ * When streaming, the new spokes of each source are passed on as soon as it answers.
+ */
+public class FanOutSuggestion implements StreamingSuggestion
+{
+	/** how often to check deadlines while no source has finished */
+	private static final long POLL_INTERVAL = 250;
+
+	private final Map<String, Suggestion> sources;
+	private final ExecutorService executor;
+	private final long timeout;
+
+	/**
+	 * @param sources suggestions to query, by display name. Iteration order is the submission order.
+	 * @param executor executor to run the sources on. Its size bounds the number of concurrent queries.
+	 * @param timeout maximum time in milliseconds each source may run
+	 */
+	public FanOutSuggestion (Map<String, Suggestion> sources, ExecutorService executor, long timeout)
+	{
+		this.sources = sources;
+		this.executor = executor;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Create a bounded executor suitable for querying remote sources.
+	 * Threads are daemon threads, so they don't keep PathVisio alive on exit.
+	 */
+	public static ExecutorService createExecutor (int threads)
+	{
+		return Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread (r, "pathway-loom-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public boolean canSuggest(PathwayElement input)
+	{
+		for (Suggestion s : sources.values())
+		{
+			if (s.canSuggest(input)) return true;
+		}
+		return false;
+	}
+
+	/** one source, remembers when it started so its deadline can be enforced */
+	private static class SourceTask implements Callable<Pathway>
+	{
+		private final String name;
+		private final Suggestion suggestion;
+		private final PathwayElement input;
+		private final CancellationToken token = new CancellationToken();
+		private volatile long started = 0;
+
+		SourceTask (String name, Suggestion suggestion, PathwayElement input)
+		{
+			this.name = name;
+			this.suggestion = suggestion;
+			this.input = input;
+		}
+
+		public Pathway call() throws SuggestionException
+		{
+			started = System.currentTimeMillis();
+			CancellationToken previous = CancellationToken.enter(token);
+			try
+			{
+				token.check();
+				return suggestion.doSuggestion(input);
+			}
+			finally
+			{
+				CancellationToken.exit(previous);
+			}
+		}
+
+		/** stop the source, also if it is blocked on the network */
+		void cancel (Future<Pathway> future)
+		{
+			token.cancel();
+			future.cancel(true);
+		}
+	}
+
+	public Pathway doSuggestion(PathwayElement input) throws SuggestionException
+	{
+		return doSuggestion(input, null);
+	}
+
+	public Pathway doSuggestion(PathwayElement input, SpokeSink sink) throws SuggestionException
+	{
+		CompletionService<Pathway> completion = new ExecutorCompletionService<Pathway>(executor);
+		Map<Future<Pathway>, SourceTask> pending = new HashMap<Future<Pathway>, SourceTask>();
+
+		CancellationToken caller = CancellationToken.current();
+		caller.check();
+		final List<SourceTask> tasks = new ArrayList<SourceTask>();
+		for (Map.Entry<String, Suggestion> entry : sources.entrySet())
+		{
+			if (!entry.getValue().canSuggest(input)) continue;
+			SourceTask task = new SourceTask(entry.getKey(), entry.getValue(), input);
+			tasks.add (task);
+			pending.put (completion.submit(SuggestionExecutors.task(task.name, task)), task);
+		}
+		if (pending.isEmpty())
+		{
+			throw new SuggestionException("None of the sources can make suggestions for this element");
+		}
+		CancellationToken.Registration cancelAll = caller.onCancel(new Runnable()
+		{
+			public void run()
+			{
+				for (SourceTask task : tasks) task.token.cancel();
+			}
+		});
+
+		Map<String, PathwayElement> spokes = new LinkedHashMap<String, PathwayElement>();
+		List<String> answered = new ArrayList<String>();
+		int failed = 0;
+		try
+		{
+			while (!pending.isEmpty())
+			{
+				caller.check();
+				long wait = expireOverdue(pending);
+				if (pending.isEmpty()) break;
+
+				Future<Pathway> done = completion.poll(wait, TimeUnit.MILLISECONDS);
+				if (done == null) continue;
+				SourceTask task = pending.remove(done);
+				if (task == null) continue; // cancelled after its deadline
+
+				try
+				{
+					Pathway part = done.get();
+					if (part == null) continue;
+					merge (spokes, part, sink);
+					answered.add (task.name);
+				}
+				catch (ExecutionException ex)
+				{
+					failed++;
+					Logger.log.warn("Source " + task.name + " failed", ex.getCause());
+				}
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new SuggestionException(ex);
+		}
+		finally
+		{
+			cancelAll.remove();
+			for (Map.Entry<Future<Pathway>, SourceTask> entry : pending.entrySet())
+			{
+				entry.getValue().cancel(entry.getKey());
+			}
+		}
+
+		if (answered.isEmpty() && failed > 0)
+		{
+			throw new SuggestionException("None of the sources could be queried successfully");
+		}
+
+		PathwayElement hub = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+		hub.setMWidth (PppPlugin.DATANODE_MWIDTH);
+		hub.setMHeight (PppPlugin.DATANODE_MHEIGHT);
+		hub.setTextLabel(input.getTextLabel());
+		hub.setDataSource(input.getDataSource());
+		hub.setGeneID(input.getGeneID());
+		hub.setCopyright("Merged from: " + answered);
+		hub.setDataNodeType(input.getDataNodeType());
+
+		return PathwayBuilder.radialLayout(hub, new ArrayList<PathwayElement>(spokes.values()));
+	}
+
+	/**
+	 * Cancel all running sources that are past their deadline.
+	 * @return how long to wait for the next result before checking again.
+	 */
+	private long expireOverdue (Map<Future<Pathway>, SourceTask> pending)
+	{
+		long now = System.currentTimeMillis();
+		long wait = POLL_INTERVAL;
+		for (Iterator<Map.Entry<Future<Pathway>, SourceTask>> it = pending.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<Future<Pathway>, SourceTask> entry = it.next();
+			long started = entry.getValue().started;
+			if (started == 0) continue; // still queued
+
+			long left = started + timeout - now;
+			if (left <= 0)
+			{
+				entry.getValue().cancel(entry.getKey());
+				it.remove();
+				Logger.log.warn("Source " + entry.getValue().name + " did not answer within " + timeout + " ms");
+			}
+			else
+			{
+				wait = Math.min (wait, left);
+			}
+		}
+		return wait;
+	}
+
+	/**
+	 * Add the spokes of part to the merged set.
+	 * Spokes are considered equal if they have the same Xref,
+	 * or, if they have no identifier, the same label.
+	 * New spokes are also passed to sink, which may be null.
+	 */
+	private static void merge (Map<String, PathwayElement> spokes, Pathway part, SpokeSink sink)
+	{
+		for (PathwayElement spoke : PathwayBuilder.getSpokes(part))
+		{
+			Xref ref = spoke.getXref();
+			String key;
+			if (ref != null && ref.getId() != null && !"".equals(ref.getId()))
+			{
+				key = ref.toString();
+			}
+			else
+			{
+				key = ("" + spoke.getTextLabel()).trim().toLowerCase();
+			}
+			if (!spokes.containsKey(key))
+			{
+				spokes.put (key, spoke);
+				if (sink != null) sink.spoke (spoke.copy());
+			}
+		}
+	}
+}
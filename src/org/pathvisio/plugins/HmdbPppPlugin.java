@@ -22,7 +22,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -77,29 +76,42 @@ public class HmdbPppPlugin extends SuggestionAdapter
 			pelt.setCopyright("Human metabolome database (http://www.hmdb.ca)");
 			pelt.setDataNodeType(input.getDataNodeType());
 
-			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
-			int noRecords = 0;
-			String aLine;
-
-			String urlString = "http://www.hmdb.ca/cgi-bin/extractor_runner.cgi?metabolites_hmdb_id="+ref.getId()+"&format=csv&select_enzymes_gene_name=on&select_enzymes_swissprot_id=on";
-			System.out.println(urlString);
-			URL url = new URL(urlString);
-			InputStream in = url.openStream();
-			BufferedReader br = new BufferedReader(new InputStreamReader(in));
-			while ((br.readLine()) != null ) {
-				noRecords += 1;
-			}
-			int row = 0;
-			in.close();
-			InputStream in2 = url.openStream();
-			BufferedReader br2 = new BufferedReader(new InputStreamReader(in2));
-			while ((aLine = br2.readLine()) != null ) {
-				String[] velden = null;
-				velden = aLine.split(",");
-				if (row >0) { //Each row except the header
+			List<PathwayElement> spokes = getEnzymes(ref.getId());
+			Pathway result = PathwayBuilder.radialLayout(pelt, spokes);
+			return result;
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
+		}	
+		catch (IDMapperException ex)
+		{
+			throw new SuggestionException(ex);
+		}	
+
+	}
+
+	/**
+	 * Query the HMDB extractor for the enzymes of a metabolite.
+	 * The CSV answer is read in a single pass, a spoke is created for each row.
+	 * @return a protein data node for each enzyme, not yet part of a Pathway.
+	 */
+	static List<PathwayElement> getEnzymes(String hmdbId) throws IOException
+	{
+		final List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+		String urlString = "http://www.hmdb.ca/cgi-bin/extractor_runner.cgi?metabolites_hmdb_id="+hmdbId+"&format=csv&select_enzymes_gene_name=on&select_enzymes_swissprot_id=on";
+		InputStream in = HttpTransport.get(urlString);
+		try
+		{
+			// the extractor answers in UTF-8, don't depend on the platform encoding
+			new CsvRowParser().parse(new InputStreamReader(in, "UTF-8"), new CsvRowParser.RowHandler()
+			{
+				public void row(int row, String[] velden)
+				{
+					if (row == 0) return; //exclude row with headings
+					if (velden.length < 4) return;
 					PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 					String swissId = velden[3];
-					System.out.println(swissId);
 					String geneName = velden[2];
 					pchildElt.setDataNodeType (DataNodeType.PROTEIN);
 					pchildElt.setTextLabel(geneName);
@@ -109,21 +121,13 @@ public class HmdbPppPlugin extends SuggestionAdapter
 					pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
 					spokes.add (pchildElt);
 				}
-
-				row++; //exclude row with headings
-			}
-			Pathway result = PathwayBuilder.radialLayout(pelt, spokes);
-			return result;
+			});
 		}
-		catch (IOException ex)
+		finally
 		{
-			throw new SuggestionException(ex);
-		}	
-		catch (IDMapperException ex)
-		{
-			throw new SuggestionException(ex);
-		}	
-
+			in.close();
+		}
+		return spokes;
 	}
 
 	/**
@@ -0,0 +1,190 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Recorded HTTP exchanges on disk, written and served by ReplayServer.
+ * <p>
+ * An exchange is found by its method, URL and request body, so SOAP calls
+ * to the same URL are told apart by their envelope. It is stored as three
+ * files, named after a digest of those: {digest}.request with the request
+ * body, if any, {digest}.response with the uncompressed response body, and
+ * {digest}.properties with the method, URL, status and content type.
+ * The properties file is written last, so an interrupted recording
+ * is never served. Recording an exchange again replaces it.
+ */
+public class HttpArchive
+{
+	/** A request and its response */
+	public static class Exchange
+	{
+		final String method;
+		final String url;
+		/** null if the request had no body */
+		final byte[] requestBody;
+		final int status;
+		/** null if the response had no content type */
+		final String contentType;
+		final byte[] responseBody;
+
+		public Exchange (String method, String url, byte[] requestBody, int status, String contentType, byte[] responseBody)
+		{
+			this.method = method;
+			this.url = url;
+			this.requestBody = requestBody;
+			this.status = status;
+			this.contentType = contentType;
+			this.responseBody = responseBody;
+		}
+	}
+
+	private final File dir;
+
+	public HttpArchive (File dir)
+	{
+		this.dir = dir;
+	}
+
+	/**
+	 * Look up a recorded exchange.
+	 * @param requestBody the request body, or null if there is none
+	 * @return the exchange, or null if it wasn't recorded
+	 */
+	public Exchange get (String method, String url, byte[] requestBody) throws IOException
+	{
+		String name = getName(method, url, requestBody);
+		File props = new File(dir, name + ".properties");
+		if (!props.exists()) return null;
+
+		Properties p = new Properties();
+		InputStream in = new FileInputStream(props);
+		try
+		{
+			p.load (in);
+		}
+		finally
+		{
+			in.close();
+		}
+		try
+		{
+			return new Exchange(method, url, requestBody,
+					Integer.parseInt(p.getProperty("status")),
+					p.getProperty("contentType"),
+					read(new File(dir, name + ".response")));
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new IOException("Broken archive entry " + props, ex);
+		}
+	}
+
+	/** store an exchange, replacing an earlier recording */
+	public void put (Exchange exchange) throws IOException
+	{
+		dir.mkdirs();
+		String name = getName(exchange.method, exchange.url, exchange.requestBody);
+		if (exchange.requestBody != null) write (new File(dir, name + ".request"), exchange.requestBody);
+		write (new File(dir, name + ".response"), exchange.responseBody);
+
+		Properties p = new Properties();
+		p.setProperty("method", exchange.method);
+		p.setProperty("url", exchange.url);
+		p.setProperty("status", "" + exchange.status);
+		if (exchange.contentType != null) p.setProperty("contentType", exchange.contentType);
+		ByteArrayOutputStream props = new ByteArrayOutputStream();
+		p.store (props, null);
+		write (new File(dir, name + ".properties"), props.toByteArray());
+	}
+
+	private static byte[] read (File f) throws IOException
+	{
+		InputStream in = new FileInputStream(f);
+		try
+		{
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+			{
+				result.write (buffer, 0, n);
+			}
+			return result.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/** write through a temporary file, so readers never see half a file */
+	private static void write (File f, byte[] data) throws IOException
+	{
+		File tmp = new File(f.getPath() + ".tmp");
+		OutputStream out = new FileOutputStream(tmp);
+		try
+		{
+			out.write (data);
+		}
+		finally
+		{
+			out.close();
+		}
+		if (f.exists()) f.delete();
+		if (!tmp.renameTo(f))
+		{
+			tmp.delete();
+			throw new IOException("Could not write " + f);
+		}
+	}
+
+	private static String getName (String method, String url, byte[] requestBody)
+	{
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update ((method + " " + url + "\n").getBytes("UTF-8"));
+			if (requestBody != null) md.update (requestBody);
+			StringBuilder name = new StringBuilder();
+			for (byte b : md.digest())
+			{
+				name.append (Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			}
+			return name.toString();
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+}
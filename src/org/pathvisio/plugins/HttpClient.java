@@ -64,8 +64,9 @@ import java.net.URL;
  *   client.download(System.out);
  *   client.close();
  *   
- * Note: To invoque the client set the "http.keepAlive"
- * parameter to false:  -Dhttp.keepAlive=false  
+ * Note: the servlet streams its answer while the upload
+ * is still going on, so this client uses its own connection
+ * instead of the shared HttpTransport.
  */
 public class HttpClient {
 	
@@ -74,7 +75,7 @@ public class HttpClient {
     = "http://www.ebi.ac.uk/webservices/whatizit/pipe";     
   
   // The actual size of the chunks sent/received to/from the servlet
-  protected static final int BUFFER_SIZE = 502; 
+  protected static final int BUFFER_SIZE = HttpTransport.BUFFER_SIZE; 
   protected byte [] buffer;
   protected boolean uploadDone;
   protected boolean downloadDone;
@@ -133,8 +134,8 @@ public class HttpClient {
   	int bread = 0;
   	while (-1 != (bread=in.read(buffer, 0, BUFFER_SIZE))){
   	  out.write(buffer, 0, bread);
-  	  out.flush();
-  	}  	
+  	}
+  	out.flush();
   }  
        
   
@@ -0,0 +1,297 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * HTTP access shared by all suggestion providers.
+ * <p>
+ * Requests go through java.net.HttpURLConnection with keep-alive,
+ * so the JVM reuses idle connections to the same host.
+ * A connection only goes back to that pool when its response
+ * has been read completely, which is why the streams returned here
+ * read any remaining data when closed: always close them.
+ * <p>
+ * Responses are requested compressed (gzip or deflate) and decoded
+ * transparently. Every request has a connect and read timeout,
+ * and at most MAX_PER_HOST requests to the same host run at the same time;
+ * further requests wait for a free slot.
+ * <p>
+ * Requests follow the CancellationToken of the calling thread: when it is
+ * cancelled, waiting for a slot stops and the connection is closed,
+ * so a blocked read fails right away instead of finishing the download.
+ * <p>
+ * For benchmarks, all requests can be sent through a ReplayServer, see setReplayBase.
+ */
+public class HttpTransport
+{
+	public static final int CONNECT_TIMEOUT = 15000;
+	public static final int READ_TIMEOUT = 60000;
+	/** maximum number of concurrent requests, and idle connections kept, per host */
+	public static final int MAX_PER_HOST = 4;
+	static final int BUFFER_SIZE = 8192;
+	/** responses are not drained beyond this size on close, the connection is dropped instead */
+	private static final int MAX_DRAIN = 64 * 1024;
+	/** how often to check for cancellation while waiting for a slot, in milliseconds */
+	private static final long CANCEL_POLL = 250;
+
+	private static final ConcurrentMap<String, Semaphore> hosts = new ConcurrentHashMap<String, Semaphore>();
+
+	static
+	{
+		// only set defaults, the user may have chosen otherwise on the command line
+		if (System.getProperty("http.keepAlive") == null)
+		{
+			System.setProperty("http.keepAlive", "true");
+		}
+		if (System.getProperty("http.maxConnections") == null)
+		{
+			System.setProperty("http.maxConnections", "" + MAX_PER_HOST);
+		}
+	}
+
+	private static volatile String replayBase = null;
+
+	private HttpTransport() {}
+
+	/**
+	 * Send all provider traffic through the ReplayServer at base,
+	 * or to the real addresses again if base is null.
+	 */
+	public static void setReplayBase (String base)
+	{
+		replayBase = base;
+	}
+
+	public static String getReplayBase()
+	{
+		return replayBase;
+	}
+
+	/**
+	 * The address to connect to for url: url itself, or its address on the
+	 * ReplayServer if one is set. Clients that don't use this class,
+	 * like the SOAP stubs, should connect to this address too.
+	 */
+	public static String rewrite (String url)
+	{
+		String base = replayBase;
+		return base == null ? url : ReplayServer.toProxyUrl(base, url);
+	}
+
+	/**
+	 * GET a URL.
+	 * @return the decoded response body. Must be closed by the caller.
+	 * @throws IOException on network errors, or if the server doesn't answer with 2xx
+	 */
+	public static InputStream get (String url) throws IOException
+	{
+		return request (url, null, null);
+	}
+
+	/**
+	 * POST a request body to a URL.
+	 * @param contentType content type of body, e.g. "application/x-www-form-urlencoded"
+	 * @param body request body, sent as UTF-8
+	 * @return the decoded response body. Must be closed by the caller.
+	 */
+	public static InputStream post (String url, String contentType, String body) throws IOException
+	{
+		return request (url, contentType, body.getBytes("UTF-8"));
+	}
+
+	private static InputStream request (String urlString, String contentType, byte[] body) throws IOException
+	{
+		URL url = new URL(rewrite(urlString));
+		CancellationToken token = CancellationToken.current();
+		// limit by the real host, also when going through a ReplayServer
+		Semaphore slots = getSlots(new URL(urlString));
+		try
+		{
+			while (!slots.tryAcquire(CANCEL_POLL, TimeUnit.MILLISECONDS))
+			{
+				if (token.isCancelled()) throw new InterruptedIOException("Cancelled while waiting for a connection to " + url.getHost());
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a connection to " + url.getHost());
+		}
+
+		boolean released = false;
+		CancellationToken.Registration abort = null;
+		try
+		{
+			final URLConnection conn = url.openConnection();
+			if (conn instanceof HttpURLConnection)
+			{
+				abort = token.onCancel(new Runnable()
+				{
+					public void run()
+					{
+						((HttpURLConnection)conn).disconnect();
+					}
+				});
+			}
+			if (token.isCancelled()) throw new InterruptedIOException("Cancelled");
+			conn.setConnectTimeout(CONNECT_TIMEOUT);
+			conn.setReadTimeout(READ_TIMEOUT);
+			conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+			if (body != null)
+			{
+				conn.setDoOutput(true);
+				conn.setRequestProperty("Content-Type", contentType);
+				if (conn instanceof HttpURLConnection)
+				{
+					((HttpURLConnection)conn).setFixedLengthStreamingMode(body.length);
+				}
+				OutputStream out = conn.getOutputStream();
+				try
+				{
+					out.write(body);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+
+			if (conn instanceof HttpURLConnection)
+			{
+				HttpURLConnection http = (HttpURLConnection)conn;
+				int status = http.getResponseCode();
+				if (status < 200 || status >= 300)
+				{
+					// read the error body, so the connection can be reused
+					InputStream err = http.getErrorStream();
+					if (err != null) drain (err);
+					throw new IOException("HTTP " + status + " " + http.getResponseMessage() + " from " + url);
+				}
+			}
+
+			InputStream in = new ResponseStream(conn.getInputStream(), slots, token, abort);
+			released = true; // the stream releases the slot when it is closed
+			String encoding = conn.getContentEncoding();
+			if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding))
+			{
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			}
+			else if ("deflate".equalsIgnoreCase(encoding))
+			{
+				return new InflaterInputStream(in);
+			}
+			return new BufferedInputStream(in, BUFFER_SIZE);
+		}
+		finally
+		{
+			if (!released)
+			{
+				if (abort != null) abort.remove();
+				slots.release();
+			}
+		}
+	}
+
+	private static Semaphore getSlots (URL url)
+	{
+		String key = url.getHost() + ":" + url.getPort();
+		Semaphore slots = hosts.get(key);
+		if (slots == null)
+		{
+			Semaphore created = new Semaphore(MAX_PER_HOST, true);
+			slots = hosts.putIfAbsent(key, created);
+			if (slots == null) slots = created;
+		}
+		return slots;
+	}
+
+	/**
+	 * Read the rest of a response and close it.
+	 * @return true if the end was reached
+	 */
+	private static boolean drain (InputStream in) throws IOException
+	{
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int total = 0;
+			int read;
+			while (total < MAX_DRAIN && (read = in.read(buffer)) != -1)
+			{
+				total += read;
+			}
+			return total < MAX_DRAIN;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * The raw response body. When closed, reads what is left
+	 * so the connection can be reused, and frees the slot for the host.
+	 * After cancellation the rest is not read, the connection is gone anyway.
+	 */
+	private static class ResponseStream extends FilterInputStream
+	{
+		private final Semaphore slots;
+		private final CancellationToken token;
+		private final CancellationToken.Registration abort;
+		private boolean closed = false;
+
+		ResponseStream (InputStream in, Semaphore slots, CancellationToken token, CancellationToken.Registration abort)
+		{
+			super(in);
+			this.slots = slots;
+			this.token = token;
+			this.abort = abort;
+		}
+
+		@Override public void close() throws IOException
+		{
+			if (closed) return;
+			closed = true;
+			try
+			{
+				if (abort != null) abort.remove();
+				if (token.isCancelled()) in.close();
+				else drain (in);
+			}
+			finally
+			{
+				slots.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.rpc.ServiceException;
+
+import keggapi.KEGGLocator;
+import keggapi.KEGGPortType;
+
+/**
+ * Shared access to the KEGG SOAP API.
+ * <p>
+ * Holds a single KEGGPortType for all KEGG plug-ins, and resolves
+ * entry titles (btit) and converts ids (bconv) in batches of up to
+ * BATCH_SIZE ids per request.
+ * Titles are remembered, so each entry is looked up only once per session.
+ */
+public class KeggGateway
+{
+	/** maximum number of ids in one btit request, as documented by KEGG */
+	static final int BATCH_SIZE = 100;
+	/** maximum number of titles remembered */
+	private static final int MAX_TITLES = 10000;
+
+	private static KeggGateway instance = null;
+
+	/** the shared gateway, created on first use */
+	public static synchronized KeggGateway getInstance() throws ServiceException
+	{
+		if (instance == null)
+		{
+			KEGGLocator locator = new KEGGLocator();
+			try
+			{
+				// through the ReplayServer, if there is one
+				instance = new KeggGateway(locator.getKEGGPort(new URL(HttpTransport.rewrite(locator.getKEGGPortAddress()))));
+			}
+			catch (MalformedURLException ex)
+			{
+				throw new ServiceException("Invalid KEGG address", ex);
+			}
+		}
+		return instance;
+	}
+
+	private final KEGGPortType serv;
+
+	/** titles by lower case id, least recently used first */
+	private final Map<String, String> titles = Collections.synchronizedMap(
+		new LinkedHashMap<String, String>(16, 0.75f, true)
+		{
+			@Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+			{
+				return size() > MAX_TITLES;
+			}
+		});
+
+	KeggGateway (KEGGPortType serv)
+	{
+		this.serv = serv;
+	}
+
+	/** the port, for calls other than btit */
+	public KEGGPortType getPort()
+	{
+		return serv;
+	}
+
+	/**
+	 * Title of a single entry, e.g. "ec:1.2.1.36 retinal dehydrogenase".
+	 * Prefer getTitles when looking up several entries.
+	 */
+	public String getTitle(String id) throws RemoteException
+	{
+		return getTitles(Collections.singletonList(id)).get(id);
+	}
+
+	/**
+	 * Titles of several entries, as returned by btit: the id,
+	 * a space and the definition. Only ids that were not looked up
+	 * before are sent to KEGG, BATCH_SIZE at a time.
+	 * @return the title for each of ids. An id that KEGG doesn't know maps to itself.
+	 */
+	public Map<String, String> getTitles(Collection<String> ids) throws RemoteException
+	{
+		Map<String, String> result = new HashMap<String, String>();
+		List<String> missing = new ArrayList<String>();
+		for (String id : ids)
+		{
+			String title = titles.get(id.toLowerCase());
+			if (title != null)
+			{
+				result.put (id, title);
+			}
+			else if (!missing.contains(id))
+			{
+				missing.add (id);
+			}
+		}
+
+		for (int start = 0; start < missing.size(); start += BATCH_SIZE)
+		{
+			checkCancelled();
+			List<String> batch = missing.subList(start, Math.min(start + BATCH_SIZE, missing.size()));
+			StringBuilder query = new StringBuilder();
+			for (String id : batch)
+			{
+				if (query.length() > 0) query.append (' ');
+				query.append (id);
+			}
+
+			// one line per entry found, starting with its id
+			String answer = serv.btit(query.toString());
+			if (answer != null)
+			{
+				for (String line : answer.split("\n"))
+				{
+					line = line.trim();
+					if (line.length() == 0) continue;
+					int space = line.indexOf(' ');
+					String id = space < 0 ? line : line.substring(0, space);
+					titles.put (id.toLowerCase(), line);
+				}
+			}
+
+			for (String id : batch)
+			{
+				String title = titles.get(id.toLowerCase());
+				result.put (id, title == null ? id : title);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * SOAP calls can't be aborted halfway,
+	 * so cancellation is checked before each request.
+	 */
+	private static void checkCancelled() throws RemoteException
+	{
+		if (CancellationToken.current().isCancelled()) throw new RemoteException("Cancelled");
+	}
+
+	/**
+	 * Convert ids to KEGG ids with bconv, BATCH_SIZE ids per request.
+	 * @param ids ids with a KEGG database prefix, e.g. "ncbi-geneid:8854"
+	 * @return the first KEGG id for each of ids that could be converted, e.g. "hsa:8854"
+	 */
+	public Map<String, String> convert(Collection<String> ids) throws RemoteException
+	{
+		List<String> all = new ArrayList<String>(ids);
+		Map<String, String> byLowerCase = new HashMap<String, String>();
+		for (int start = 0; start < all.size(); start += BATCH_SIZE)
+		{
+			checkCancelled();
+			List<String> batch = all.subList(start, Math.min(start + BATCH_SIZE, all.size()));
+			StringBuilder query = new StringBuilder();
+			for (String id : batch)
+			{
+				if (query.length() > 0) query.append (' ');
+				query.append (id);
+			}
+
+			// one line per conversion: source id, tab, KEGG id, tab, relation
+			String answer = serv.bconv(query.toString());
+			if (answer == null) continue;
+			for (String line : answer.split("\n"))
+			{
+				String[] fields = line.trim().split("\t");
+				if (fields.length < 2) continue;
+				String source = fields[0].toLowerCase();
+				if (!byLowerCase.containsKey(source)) byLowerCase.put (source, fields[1]);
+			}
+		}
+
+		Map<String, String> result = new HashMap<String, String>();
+		for (String id : all)
+		{
+			String keggId = byLowerCase.get(id.toLowerCase());
+			if (keggId != null) result.put (id, keggId);
+		}
+		return result;
+	}
+}
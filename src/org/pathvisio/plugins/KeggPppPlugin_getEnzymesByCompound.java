@@ -21,11 +21,12 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.rpc.ServiceException;
 
-import keggapi.KEGGLocator;
 import keggapi.KEGGPortType;
 
 import org.bridgedb.IDMapperException;
@@ -67,17 +68,15 @@ public class KeggPppPlugin_getEnzymesByCompound extends SuggestionAdapter
 		    pelt.setCopyright("KEGG (http://www.genome.jp/kegg/");
 		    pelt.setDataNodeType(input.getDataNodeType());
 			
-	        KEGGLocator    locator  = new KEGGLocator();
-	        KEGGPortType   serv     = locator.getKEGGPort();
+	        KeggGateway    kegg     = KeggGateway.getInstance();
+	        KEGGPortType   serv     = kegg.getPort();
 			
 	        String query = "cpd:" + ref.getId();
 	        //keggid = serv.bconv(input.getGeneID());
 	        System.out.println(query);
 	        //String[] bconvoutput = keggid.split("\t");
 	        String eccode[] = serv.get_enzymes_by_compound(query);
-	        for (int i = 0; i < eccode.length; i++) {
-	        	System.out.println(serv.btit(eccode[i]));
-	        }
+	        Map<String, String> titles = kegg.getTitles(Arrays.asList(eccode));
 	        
 	        List<PathwayElement> spokes = new ArrayList<PathwayElement>();
 	        
@@ -86,9 +85,7 @@ public class KeggPppPlugin_getEnzymesByCompound extends SuggestionAdapter
 	        for (int i = 0; i < eccode.length; i++) {
 	            PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 	            pchildElt.setDataNodeType(DataNodeType.PROTEIN);
-		    	System.out.println(eccode[i]);
-		    	String btitTextLabel = serv.btit(eccode[i]);
-		    	System.out.println(btitTextLabel);
+		    	String btitTextLabel = titles.get(eccode[i]);
 		    	String[] textLabel = btitTextLabel.split("; ");
 		    	int numberEnzymes = textLabel.length;
 		    	pchildElt.setTextLabel(textLabel[0].substring(12));
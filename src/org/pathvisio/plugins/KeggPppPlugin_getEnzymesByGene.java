@@ -21,11 +21,14 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.rpc.ServiceException;
 
-import keggapi.KEGGLocator;
 import keggapi.KEGGPortType;
 
 import org.bridgedb.IDMapperException;
@@ -39,7 +42,7 @@ import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
 
-public class KeggPppPlugin_getEnzymesByGene extends SuggestionAdapter
+public class KeggPppPlugin_getEnzymesByGene extends SuggestionAdapter implements BatchSuggestion
 {
 	private GdbManager gdbManager;
 	
@@ -49,59 +52,89 @@ public class KeggPppPlugin_getEnzymesByGene extends SuggestionAdapter
 	}
 	
 	@Override public Pathway doSuggestion(PathwayElement input) throws SuggestionException
+	{
+		Pathway result = doBatchSuggestion(Collections.singletonList(input)).get(input);
+		if (result == null)
+		{
+			throw new SuggestionException("Could not find a valid Entrez Gene ID to go with this element");
+		}
+		return result;
+	}
+	
+	/**
+	 * The Entrez Gene ids of all inputs are converted to KEGG genes in
+	 * batched bconv requests, and the enzyme titles of all genes are
+	 * resolved together. Only get_enzymes_by_gene is called per gene.
+	 */
+	public Map<PathwayElement, Pathway> doBatchSuggestion(List<PathwayElement> inputs) throws SuggestionException
 	{
 		try
 		{   
-			Xref ref = GdbUtil.forceDataSource(input.getXref(), gdbManager, BioDataSource.ENTREZ_GENE);
-			if (ref == null)
+			Map<PathwayElement, String> queries = new LinkedHashMap<PathwayElement, String>();
+			for (PathwayElement input : inputs)
 			{
-				throw new SuggestionException("Could not find a valid Entrez Gene ID to go with this element");
+				Xref ref = GdbUtil.forceDataSource(input.getXref(), gdbManager, BioDataSource.ENTREZ_GENE);
+				if (ref != null) queries.put (input, "ncbi-geneid:" + ref.getId());
 			}
 			
-		    PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
-		    pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-		    pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-		    pelt.setTextLabel(input.getTextLabel());
-		    pelt.setDataSource(input.getDataSource());
-		    pelt.setGeneID(input.getGeneID());
-		    pelt.setCopyright("KEGG (http://www.genome.jp/kegg/");
-		    pelt.setDataNodeType(input.getDataNodeType());
-	
-			
-	        KEGGLocator    locator  = new KEGGLocator();
-	        KEGGPortType   serv     = locator.getKEGGPort();
-	        List<PathwayElement> spokes = new ArrayList<PathwayElement>();
-			
-	        String keggid = null;
-	        keggid = serv.bconv("ncbi-geneid:"+input.getGeneID());
-	        String[] bconvoutput = keggid.split("\t");
-	        System.out.println("keggid: "+input.getGeneID());
-	        String eccode[] = serv.get_enzymes_by_gene(bconvoutput[1]);
-	        //results = serv.get_compounds_by_enzyme(eccode[0]);
-	        for (int i = 0; i < eccode.length; i++) {
-	            PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
-		    	pchildElt.setDataNodeType (DataNodeType.GENEPRODUCT);
-		    	String btitTextLabel = serv.btit(eccode[i]);
-		    	System.out.println(eccode[i]);
-		    	System.out.println(btitTextLabel);
-		    	String[] textLabel = btitTextLabel.split(";");
-		    	
-		    	String[] textLabel2 = textLabel[0].split(" ");
-		    	String textLabel3 = "";
-		    	for (int j=1;j<textLabel2.length;j++){
-		    		textLabel3 += textLabel2[j]+" ";
-		    	}
-		    	
-		    	pchildElt.setTextLabel(textLabel3);
-		    	pchildElt.setDataSource(BioDataSource.ENZYME_CODE);
-		    	String[] wellFormedEC = textLabel2[0].split(":");
-		    	pchildElt.setGeneID(wellFormedEC[1]);
-		    	pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-			    pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-			    spokes.add (pchildElt);
+	        KeggGateway    kegg     = KeggGateway.getInstance();
+	        KEGGPortType   serv     = kegg.getPort();
+	        Map<String, String> keggIds = kegg.convert(queries.values());
+	        
+	        Map<PathwayElement, String[]> enzymes = new LinkedHashMap<PathwayElement, String[]>();
+	        List<String> allEnzymes = new ArrayList<String>();
+	        CancellationToken token = CancellationToken.current();
+	        for (Map.Entry<PathwayElement, String> query : queries.entrySet())
+	        {
+	        	token.check();
+	        	String keggid = keggIds.get(query.getValue());
+	        	if (keggid == null) continue;
+		        String eccode[] = serv.get_enzymes_by_gene(keggid);
+		        if (eccode == null) continue;
+		        enzymes.put (query.getKey(), eccode);
+		        allEnzymes.addAll (Arrays.asList(eccode));
+	        }
+	        Map<String, String> titles = kegg.getTitles(allEnzymes);
+	        
+	        Map<PathwayElement, Pathway> results = new LinkedHashMap<PathwayElement, Pathway>();
+	        for (Map.Entry<PathwayElement, String[]> entry : enzymes.entrySet())
+	        {
+	        	PathwayElement input = entry.getKey();
+	        	String[] eccode = entry.getValue();
+	        	
+			    PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+			    pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
+			    pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
+			    pelt.setTextLabel(input.getTextLabel());
+			    pelt.setDataSource(input.getDataSource());
+			    pelt.setGeneID(input.getGeneID());
+			    pelt.setCopyright("KEGG (http://www.genome.jp/kegg/");
+			    pelt.setDataNodeType(input.getDataNodeType());
+			    
+		        List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+		        for (int i = 0; i < eccode.length; i++) {
+		            PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+			    	pchildElt.setDataNodeType (DataNodeType.GENEPRODUCT);
+			    	String btitTextLabel = titles.get(eccode[i]);
+			    	String[] textLabel = btitTextLabel.split(";");
+			    	
+			    	String[] textLabel2 = textLabel[0].split(" ");
+			    	String textLabel3 = "";
+			    	for (int j=1;j<textLabel2.length;j++){
+			    		textLabel3 += textLabel2[j]+" ";
+			    	}
+			    	
+			    	pchildElt.setTextLabel(textLabel3);
+			    	pchildElt.setDataSource(BioDataSource.ENZYME_CODE);
+			    	String[] wellFormedEC = textLabel2[0].split(":");
+			    	pchildElt.setGeneID(wellFormedEC[wellFormedEC.length - 1]);
+			    	pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
+				    pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
+				    spokes.add (pchildElt);
+		        }
+			    results.put (input, PathwayBuilder.radialLayout(pelt, spokes));
 	        }
-		    Pathway result = PathwayBuilder.radialLayout(pelt, spokes);
-			return result;
+	        return results;
 		}
 		catch (ServiceException ex)
 		{
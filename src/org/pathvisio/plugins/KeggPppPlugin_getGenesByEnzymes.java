@@ -21,11 +21,12 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.rpc.ServiceException;
 
-import keggapi.KEGGLocator;
 import keggapi.KEGGPortType;
 
 import org.bridgedb.IDMapperException;
@@ -71,19 +72,19 @@ public class KeggPppPlugin_getGenesByEnzymes extends SuggestionAdapter
 		    pelt.setCopyright("KEGG (http://www.genome.jp/kegg/");
 		    pelt.setDataNodeType(input.getDataNodeType());
 		    
-	        KEGGLocator    locator  = new KEGGLocator();
-	        KEGGPortType   serv     = locator.getKEGGPort();
+	        KeggGateway    kegg     = KeggGateway.getInstance();
+	        KEGGPortType   serv     = kegg.getPort();
 			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
 			
 			String[] results  = null;
 			String query = "ec:" + ref.getId();
 	        results = serv.get_genes_by_enzyme(query, input.getOrganism());
 	        System.out.println(results.length +":"+input.getGeneID()+" "+input.getOrganism());
+	        Map<String, String> titles = kegg.getTitles(Arrays.asList(results));
 	        for (int i = 0; i < results.length; i++) {
 	            PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 		    	pchildElt.setDataNodeType (DataNodeType.GENEPRODUCT);
-		    	String btitTextLabel = serv.btit(results[i]);
-		    	System.out.println(btitTextLabel);
+		    	String btitTextLabel = titles.get(results[i]);
 		    	String[] textLabel_intermediate = btitTextLabel.split("; ");
 		    	String[] textLabel = textLabel_intermediate[0].split(" ");
 		    	pchildElt.setTextLabel(textLabel[1]);
@@ -18,12 +18,20 @@ package org.pathvisio.plugins;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.bridgedb.Xref;
 import org.pathvisio.core.debug.Logger;
@@ -48,6 +56,12 @@ import org.pathvisio.core.util.FileUtils;
  * but this can be changed by adding the line PPP_PATHWAY_SET=/path/to/pathways
  * in the PathVisio preferences file (~/.PathVisio/.PathVisio)
  * 
+ * The index is saved to a snapshot file (PPP_INDEX_SNAPSHOT), so that
+ * later sessions don't have to parse all pathways again. Only files that
+ * were added or changed are parsed, also while PathVisio is running;
+ * suggestions use the previous index until such a refresh is done.
+ * Pathways are parsed on PPP_INDEX_THREADS threads (default: one per processor).
+ * 
  * TODO: add a GUI option for changing this preference
  */
 public class LocalPathways extends SuggestionAdapter
@@ -55,7 +69,9 @@ public class LocalPathways extends SuggestionAdapter
 	/** Preferences for this plug-in */
 	enum PppPrefs implements Preference
 	{
-		PPP_PATHWAY_SET (new File(GlobalPreference.getDataDir().toString(), "wikipathways").toString());
+		PPP_PATHWAY_SET (new File(GlobalPreference.getDataDir().toString(), "wikipathways").toString()),
+		PPP_INDEX_SNAPSHOT (new File(GlobalPreference.getDataDir().toString(), "wikipathways.idx").toString()),
+		PPP_INDEX_THREADS ("0");
 
 		PppPrefs (String defaultValue) 
 		{
@@ -81,18 +97,54 @@ public class LocalPathways extends SuggestionAdapter
 	// lazily initialized
 	private static RelationshipIndexer indexer = null;
 	
+	/**
+	 * The indexer, which is built on first use. Later calls
+	 * return at once; changed pathways are picked up in the background.
+	 */
+	private static RelationshipIndexer getIndexer() throws IOException
+	{
+		RelationshipIndexer result;
+		synchronized (LocalPathways.class)
+		{
+			if (indexer == null)
+			{
+				indexer = new RelationshipIndexer(
+						PreferenceManager.getCurrent().getFile(PppPrefs.PPP_PATHWAY_SET),
+						PreferenceManager.getCurrent().getFile(PppPrefs.PPP_INDEX_SNAPSHOT),
+						getIndexThreads()
+					);
+				return indexer;
+			}
+			result = indexer;
+		}
+		// pick up pathways that were added or changed since the last check
+		result.refreshIfStale();
+		return result;
+	}
+	
+	/**
+	 * Number of threads used to parse pathways, from PPP_INDEX_THREADS.
+	 * 0 (the default) means one thread per processor.
+	 */
+	private static int getIndexThreads()
+	{
+		int threads = PreferenceManager.getCurrent().getInt(PppPrefs.PPP_INDEX_THREADS);
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+	
 	@Override public Pathway doSuggestion(PathwayElement input)
 			throws SuggestionException 
 	{
-		if (indexer == null)
+		Xref ref = RelationshipIndexer.Participant.annotated(input.getXref());
+		RelationGraph graph;
+		try
 		{
-			indexer = new RelationshipIndexer(
-					PreferenceManager.getCurrent().getFile(PppPrefs.PPP_PATHWAY_SET)
-				);
+			graph = getIndexer().graph;
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
 		}
-		
-		Xref ref = input.getXref();
-		RelationshipIndexer.Relation r = indexer.relations.get(ref);
 		
 		PathwayElement hub = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 	    hub.setMWidth (PppPlugin.DATANODE_MWIDTH);
@@ -103,88 +155,354 @@ public class LocalPathways extends SuggestionAdapter
 	    hub.setCopyright("Human metabolome database (http://www.hmdb.ca)");
 	    hub.setDataNodeType(input.getDataNodeType());
 
-	    List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+	    // the same partner may occur in many relations, show it once
+	    Map<Object, PathwayElement> spokes = new LinkedHashMap<Object, PathwayElement>();
+	    // a data node without identifier has no relations of its own
+	    int node = ref == null ? -1 : graph.getNodeId(ref);
+	    int degree = node < 0 ? 0 : graph.getDegree(node);
+	    for (int i = 0; i < degree; ++i)
+	    {
+	    	RelationshipIndexer.Relation r = graph.getRelation(node, i);
+	    	addSpokes (spokes, ref, r.getLefts());
+	    	addSpokes (spokes, ref, r.getMediators());
+	    	addSpokes (spokes, ref, r.getRights());
+	    }
+			
+	    Pathway result = PathwayBuilder.radialLayout(hub, new ArrayList<PathwayElement>(spokes.values()));
+		return result;
 		
-		for (PathwayElement pelt : r.getLefts())	
-		{
-			PathwayElement pchildElt = pelt.copy();
-		    pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-		    pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-	    	spokes.add (pchildElt);
-		}
+	}
 
-		for (PathwayElement pelt : r.getMediators())	
-		{
-			PathwayElement pchildElt = pelt.copy();
-		    pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-		    pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-	    	spokes.add (pchildElt);
-		}
-		for (PathwayElement pelt : r.getRights())	
+	/**
+	 * Add a spoke for each participant that is not the hub itself
+	 * and not already present. Participants are the same if they have
+	 * the same Xref, or without Xref, the same label.
+	 */
+	private static void addSpokes(Map<Object, PathwayElement> spokes, Xref hubRef, Set<RelationshipIndexer.Participant> participants)
+	{
+		for (RelationshipIndexer.Participant p : participants)	
 		{
-			PathwayElement pchildElt = pelt.copy();
+			Object key = p.getXref() != null ? p.getXref() : p.getLabel();
+			if (key == null || (hubRef != null && key.equals(hubRef)) || spokes.containsKey(key)) continue;
+			PathwayElement pchildElt = p.toDataNode();
 		    pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 		    pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-	    	spokes.add (pchildElt);
+	    	spokes.put (key, pchildElt);
 		}
-			
-	    Pathway result = PathwayBuilder.radialLayout(hub, spokes);
-		return result;
-		
 	}
-
 	
 	/** copied from org.pathvisio.indexer.RelationshipIndexer.
 	 * TODO: refactor common code
 	 */
-	public class RelationshipIndexer 
+	public static class RelationshipIndexer 
 	{
-		public RelationshipIndexer(File pwDir) 
+		public RelationshipIndexer(File pwDir) throws IOException
 		{
-			List<File> files = FileUtils.getFiles(pwDir, "gpml", true);
-			indexFiles (files);
+			this (pwDir, null, 1);
 		}
 		
-		public void indexFiles(List<File> files)
+		/**
+		 * Index all GPML files in pwDir.
+		 * If snapshot is not null, the index saved in it by an earlier
+		 * session is loaded first, and only files that are new or changed
+		 * since then (by modification time or size) are parsed.
+		 * The snapshot is rewritten whenever the index changes.
+		 * @param threads number of files to parse at the same time
+		 * @throws IOException if indexing was interrupted or failed
+		 */
+		public RelationshipIndexer(File pwDir, File snapshot, int threads) throws IOException
 		{
-			for (File f : files)
+			this.pwDir = pwDir;
+			this.snapshot = snapshot;
+			this.threads = threads;
+			if (snapshot != null && snapshot.exists())
 			{
 				try
 				{
-					Pathway p = new Pathway();
-					p.readFromXml(f, true);
-					indexPathway (p);
+					files.putAll (RelationshipSnapshot.read(snapshot));
 				}
-				catch (ConverterException ex)
+				catch (IOException ex)
 				{
-					Logger.log.warn ("Could not read pathway ", ex);
+					Logger.log.warn ("Could not read relationship index snapshot " + snapshot, ex);
 				}
-				catch (IOException ex)
+			}
+			if (!refresh())
+			{
+				rebuildLookup();
+			}
+		}
+		
+		/** minimum time between two automatic checks of the pathway directory, in ms */
+		private static final long REFRESH_INTERVAL = 60000;
+		
+		private final File pwDir;
+		private final File snapshot;
+		private final int threads;
+		private volatile long lastCheck = 0;
+		/** true while a background refresh is queued or running */
+		private final AtomicBoolean refreshing = new AtomicBoolean();
+		
+		/**
+		 * An indexed GPML file, with the modification time and
+		 * size it had when it was parsed.
+		 */
+		static class IndexedFile
+		{
+			final long lastModified;
+			final long length;
+			final List<Relation> relations;
+			
+			IndexedFile (long lastModified, long length, List<Relation> relations)
+			{
+				this.lastModified = lastModified;
+				this.length = length;
+				this.relations = relations;
+			}
+			
+			/** true if f has not changed since it was indexed */
+			boolean isCurrent(File f)
+			{
+				return f.lastModified() == lastModified && f.length() == length;
+			}
+		}
+		
+		/** all indexed files, by absolute path, in directory listing order */
+		final Map<File, IndexedFile> files = new LinkedHashMap<File, IndexedFile>();
+		
+		/**
+		 * Start a refresh on a background thread, unless the last check
+		 * was less than REFRESH_INTERVAL ago or a refresh is already running.
+		 * Returns at once; until the refresh is done, graph is the previous index.
+		 */
+		public void refreshIfStale()
+		{
+			if (System.currentTimeMillis() - lastCheck <= REFRESH_INTERVAL) return;
+			if (!refreshing.compareAndSet(false, true)) return;
+			Thread t = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						refresh();
+					}
+					catch (IOException ex)
+					{
+						Logger.log.warn ("Could not refresh relationship index", ex);
+					}
+					finally
+					{
+						refreshing.set(false);
+					}
+				}
+			}, "Relationship index refresh");
+			t.setDaemon(true);
+			t.start();
+		}
+		
+		/**
+		 * Bring the index up to date with the pathway directory.
+		 * New and changed files are parsed, the relations of changed
+		 * and deleted files are dropped. Unchanged files are not parsed again.
+		 * @return true if the index changed.
+		 * @throws IOException if indexing was interrupted or failed; the index is not changed then.
+		 */
+		public synchronized boolean refresh() throws IOException
+		{
+			lastCheck = System.currentTimeMillis();
+			List<File> current = FileUtils.getFiles(pwDir, "gpml", true);
+			
+			// rebuild the file map in listing order, so the result does
+			// not depend on the order in which files were changed.
+			List<File> changed = new ArrayList<File>();
+			for (File f : current)
+			{
+				IndexedFile entry = files.get(f.getAbsoluteFile());
+				if (entry == null || !entry.isCurrent(f))
+				{
+					changed.add (f);
+				}
+			}
+			Map<File, IndexedFile> parsed = parseAll (changed);
+			
+			Map<File, IndexedFile> updated = new LinkedHashMap<File, IndexedFile>();
+			for (File f : current)
+			{
+				File key = f.getAbsoluteFile();
+				IndexedFile entry = parsed.get(key);
+				updated.put (key, entry != null ? entry : files.get(key));
+			}
+			int removed = 0;
+			for (File f : files.keySet())
+			{
+				if (!updated.containsKey(f)) removed++;
+			}
+			if (parsed.isEmpty() && removed == 0) return false;
+			
+			Logger.log.info ("Relationship index: parsed " + parsed.size() + " new or changed files, dropped " + removed + " deleted files");
+			files.clear();
+			files.putAll (updated);
+			rebuildLookup();
+			saveSnapshot();
+			return true;
+		}
+		
+		/**
+		 * Parse the given files and add them to the index,
+		 * replacing earlier versions of the same files.
+		 * @throws IOException if indexing was interrupted or failed; the index is not changed then.
+		 */
+		public synchronized void indexFiles(List<File> files) throws IOException
+		{
+			Map<File, IndexedFile> parsed = parseAll (files);
+			for (File f : files)
+			{
+				File key = f.getAbsoluteFile();
+				this.files.put (key, parsed.get(key));
+			}
+			rebuildLookup();
+		}
+		
+		/**
+		 * Parse a list of files, using as many threads as this indexer
+		 * was configured with.
+		 * Each worker takes the next unparsed file until none are left,
+		 * and collects its results in its own map. The partial maps are
+		 * merged by file afterwards, so the result is the same as
+		 * parsing the files one by one.
+		 * @return parse result for each file, by absolute path.
+		 * @throws InterruptedIOException if the thread was interrupted, which leaves the interrupt flag set
+		 * @throws IOException if a worker failed unexpectedly
+		 */
+		private Map<File, IndexedFile> parseAll(final List<File> todo) throws IOException
+		{
+			Map<File, IndexedFile> result = new HashMap<File, IndexedFile>();
+			int workers = Math.min (threads, todo.size());
+			if (workers <= 1)
+			{
+				for (File f : todo)
 				{
-					Logger.log.warn ("Could not read pathway ", ex);
+					result.put (f.getAbsoluteFile(), parse(f));
 				}
+				return result;
+			}
+			
+			final AtomicInteger next = new AtomicInteger();
+			List<Future<Map<File, IndexedFile>>> partials = new ArrayList<Future<Map<File, IndexedFile>>>();
+			ExecutorService executor = SuggestionExecutors.create(workers);
+			try
+			{
+				for (int i = 0; i < workers; ++i)
+				{
+					partials.add (executor.submit(new Callable<Map<File, IndexedFile>>()
+					{
+						public Map<File, IndexedFile> call()
+						{
+							Map<File, IndexedFile> partial = new HashMap<File, IndexedFile>();
+							int index;
+							while ((index = next.getAndIncrement()) < todo.size())
+							{
+								File f = todo.get(index);
+								partial.put (f.getAbsoluteFile(), parse(f));
+							}
+							return partial;
+						}
+					}));
+				}
+				for (Future<Map<File, IndexedFile>> partial : partials)
+				{
+					result.putAll (partial.get());
+				}
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				InterruptedIOException interrupted = new InterruptedIOException("Interrupted while indexing pathways");
+				interrupted.initCause(ex);
+				throw interrupted;
 			}
+			catch (ExecutionException ex)
+			{
+				throw new IOException("Could not index pathways", ex.getCause());
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+			return result;
+		}
+		
+		/**
+		 * Find all relations in a single file.
+		 * A file that can't be read is recorded without relations,
+		 * so it is not tried again until it changes.
+		 */
+		private IndexedFile parse(File f)
+		{
+			// read size and date before parsing, so a change
+			// during parsing is noticed next time.
+			long lastModified = f.lastModified();
+			long length = f.length();
+			List<Relation> found = new ArrayList<Relation>();
+			try
+			{
+				Pathway p = new Pathway();
+				p.readFromXml(f, true);
+				found = indexPathway (p);
+			}
+			catch (ConverterException ex)
+			{
+				Logger.log.warn ("Could not read pathway ", ex);
+			}
+			catch (IOException ex)
+			{
+				Logger.log.warn ("Could not read pathway ", ex);
+			}
+			return new IndexedFile(lastModified, length, found);
 		}
 		
-		public void indexPathway(Pathway pathway) throws IOException
+		private void saveSnapshot()
 		{
+			if (snapshot == null) return;
+			try
+			{
+				RelationshipSnapshot.write(snapshot, files);
+			}
+			catch (IOException ex)
+			{
+				Logger.log.warn ("Could not write relationship index snapshot " + snapshot, ex);
+			}
+		}
+		
+		/**
+		 * Find all relations in a pathway.
+		 */
+		public List<Relation> indexPathway(Pathway pathway) throws IOException
+		{
+			List<Relation> result = new ArrayList<Relation>();
 			//Find all connectors that do not connect to an anchor
 			for(PathwayElement pe : pathway.getDataObjects()) {
 				if(isRelation(pathway, pe)) {
-					indexRelationship(pe);
+					result.add (new Relation(pe));
 				}
 			}		
+			return result;
 		}
 		
-		Map<Xref, Relation> relations = new HashMap<Xref, Relation>();
+		/**
+		 * Lookup from Xref to relations. Replaced as a whole when the index
+		 * changes, so readers never see a half-updated graph.
+		 */
+		volatile RelationGraph graph = RelationGraph.EMPTY;
 		
-		void indexRelationship(PathwayElement relation) throws IOException 
+		private void rebuildLookup()
 		{
-			Relation r = new Relation(relation);
-			for (Xref ref : r.getRefs())
+			List<Relation> all = new ArrayList<Relation>();
+			for (IndexedFile entry : files.values())
 			{
-				relations.put (ref, r);
-			}			
+				all.addAll (entry.relations);
+			}
+			graph = new RelationGraph(all);
 		}
 		
 //		void addElements(String field, Collection<PathwayElement> elms) {
@@ -226,10 +544,95 @@ public class LocalPathways extends SuggestionAdapter
 			return false;
 		}
 		
-		class Relation {
-			private Set<PathwayElement> lefts = new HashSet<PathwayElement>();
-			private Set<PathwayElement> rights = new HashSet<PathwayElement>();
-			private Set<PathwayElement> mediators = new HashSet<PathwayElement>();
+		/**
+		 * The part of a relation participant that is needed to make a suggestion.
+		 * Participants don't refer back to the Pathway they were found in,
+		 * so a parsed Pathway can be discarded as soon as it has been indexed.
+		 */
+		static final class Participant
+		{
+			enum Role { LEFT, MEDIATOR, RIGHT }
+			
+			private final Xref xref;
+			private final String label;
+			private final String dataNodeType;
+			private final Role role;
+			
+			/**
+			 * @param xref identifier, or null for participants that are not
+			 * an annotated data node. An Xref with an empty id counts as none.
+			 */
+			Participant(Xref xref, String label, String dataNodeType, Role role)
+			{
+				this.xref = annotated(xref);
+				// the same labels and types occur in many pathways, share them
+				this.label = label == null ? null : label.intern();
+				this.dataNodeType = dataNodeType == null ? null : dataNodeType.intern();
+				this.role = role;
+			}
+			
+			/** ref, or null if it has no id, as for a data node that is not annotated */
+			static Xref annotated(Xref ref)
+			{
+				if (ref == null || ref.getId() == null || "".equals(ref.getId())) return null;
+				return ref;
+			}
+			
+			static Participant fromElement(PathwayElement pwe, Role role)
+			{
+				if (pwe.getObjectType() == ObjectType.DATANODE)
+				{
+					return new Participant(pwe.getXref(), pwe.getTextLabel(), pwe.getDataNodeType(), role);
+				}
+				return new Participant(null, pwe.getTextLabel(), null, role);
+			}
+			
+			Xref getXref() { return xref; }
+			String getLabel() { return label; }
+			String getDataNodeType() { return dataNodeType; }
+			Role getRole() { return role; }
+			
+			/**
+			 * Create a new, detached data node for this participant.
+			 */
+			PathwayElement toDataNode()
+			{
+				PathwayElement pwe = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+				if (label != null) pwe.setTextLabel(label);
+				if (dataNodeType != null) pwe.setDataNodeType(dataNodeType);
+				if (xref != null)
+				{
+					pwe.setDataSource(xref.getDataSource());
+					if (xref.getId() != null) pwe.setGeneID(xref.getId());
+				}
+				return pwe;
+			}
+			
+			@Override public boolean equals(Object o)
+			{
+				if (this == o) return true;
+				if (!(o instanceof Participant)) return false;
+				Participant other = (Participant)o;
+				return role == other.role && 
+					(xref == null ? other.xref == null : xref.equals(other.xref)) &&
+					(label == null ? other.label == null : label.equals(other.label)) &&
+					(dataNodeType == null ? other.dataNodeType == null : dataNodeType.equals(other.dataNodeType));
+			}
+			
+			@Override public int hashCode()
+			{
+				int result = role.hashCode();
+				result = 31 * result + (xref == null ? 0 : xref.hashCode());
+				result = 31 * result + (label == null ? 0 : label.hashCode());
+				result = 31 * result + (dataNodeType == null ? 0 : dataNodeType.hashCode());
+				return result;
+			}
+		}
+		
+		static class Relation {
+			private Set<Participant> lefts = new HashSet<Participant>();
+			private Set<Participant> rights = new HashSet<Participant>();
+			private Set<Participant> mediators = new HashSet<Participant>();
 			private Set<Xref> refs = new HashSet<Xref>();
 			
 			public Set<Xref> getRefs()
@@ -237,6 +640,10 @@ public class LocalPathways extends SuggestionAdapter
 				return refs;
 			}
 			
+			/** create an empty relation, participants are added by the caller */
+			Relation() {
+			}
+			
 			public Relation(PathwayElement relationLine) {
 				if(relationLine.getObjectType() != ObjectType.LINE) {
 					throw new IllegalArgumentException("Object type should be line!");
@@ -281,36 +688,47 @@ public class LocalPathways extends SuggestionAdapter
 			}
 			
 			void addLeft(PathwayElement pwe) {
-				addElement(pwe, lefts);
+				addElement(pwe, Participant.Role.LEFT);
 			}
 			
 			void addRight(PathwayElement pwe) {
-				addElement(pwe, rights);
+				addElement(pwe, Participant.Role.RIGHT);
 			}
 			
 			void addMediator(PathwayElement pwe) {
-				addElement(pwe, mediators);
+				addElement(pwe, Participant.Role.MEDIATOR);
 			}
 			
-			void addElement(PathwayElement pwe, Set<PathwayElement> set) {
+			void addElement(PathwayElement pwe, Participant.Role role) {
 				if(pwe != null) {
-					//If it's a group, add all subelements
+					//If it's a group, add all subelements instead
 					if(pwe.getObjectType() == ObjectType.GROUP) {
 						for(PathwayElement ge : pwe.getParent().getGroupElements(pwe.getGroupId())) {
-							addElement(ge, set);
+							addElement(ge, role);
 						}
+					} else {
+						addParticipant(Participant.fromElement(pwe, role));
 					}
-					set.add(pwe);
-					if (pwe.getObjectType() == ObjectType.DATANODE)
-					{
-						refs.add (pwe.getXref());
-					}
 				}
 			}
 			
-			Set<PathwayElement> getLefts() { return lefts; }
-			Set<PathwayElement> getRights() { return rights; }
-			Set<PathwayElement> getMediators() { return mediators; }
+			/** add a single participant to the set for its role */
+			void addParticipant(Participant p) {
+				switch (p.getRole())
+				{
+				case LEFT: lefts.add(p); break;
+				case MEDIATOR: mediators.add(p); break;
+				case RIGHT: rights.add(p); break;
+				}
+				if (p.getXref() != null)
+				{
+					refs.add (p.getXref());
+				}
+			}
+			
+			Set<Participant> getLefts() { return lefts; }
+			Set<Participant> getRights() { return rights; }
+			Set<Participant> getMediators() { return mediators; }
 		}
 		
 		/**
@@ -0,0 +1,293 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.preferences.PreferenceManager;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A SPARQL endpoint that runs in-process and answers from RDF files,
+ * as a stand-in for the live endpoints in offline tests and benchmarks.
+ * <p>
+ * Every dataset is an in-memory model, served at /sparql/{dataset}, which
+ * matches the layout SparqlEndpoints.setLocalBase expects. Queries come as
+ * the query parameter of a GET, or of a form encoded POST, as sent by
+ * QueryEngineHTTP. Results are SPARQL XML. Only SELECT queries are supported.
+ * <p>
+ * Fixtures for all endpoints are bundled in the sparql-fixtures directory
+ * next to this class; a directory with one file per dataset, named
+ * {dataset}.ttl, .nt or .rdf, can be used instead.
+ */
+public class LocalSparqlEndpoint
+{
+	/** directory of the bundled fixtures, relative to this class */
+	private static final String BUNDLED = "sparql-fixtures/";
+	private static final int DEFAULT_PORT = 8184;
+	private static final int DEFAULT_THREADS = 16;
+
+	private final Map<String, Model> datasets = new HashMap<String, Model>();
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	/**
+	 * Create an endpoint for datasets. Call start to begin serving.
+	 * The models are only read, never modified.
+	 * @param address use port 0 to pick a free port
+	 * @param threads number of queries answered at the same time, if there are no virtual threads
+	 */
+	public LocalSparqlEndpoint (Map<String, Model> datasets, InetSocketAddress address, int threads) throws IOException
+	{
+		this.datasets.putAll (datasets);
+		server = HttpServer.create(address, 0);
+		server.createContext("/sparql/", new QueryHandler());
+		executor = SuggestionExecutors.create(threads);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Start an endpoint on a free port of the loopback interface,
+	 * and send the queries of all providers to it.
+	 * @param fixtures directory with fixtures, or null for the bundled ones
+	 */
+	public static LocalSparqlEndpoint startForProviders (File fixtures) throws IOException
+	{
+		Map<String, Model> datasets = fixtures == null ? loadBundledFixtures() : loadFixtures(fixtures);
+		LocalSparqlEndpoint endpoint = new LocalSparqlEndpoint(datasets, new InetSocketAddress("127.0.0.1", 0), DEFAULT_THREADS);
+		endpoint.start();
+		SparqlEndpoints.setLocalBase (endpoint.getBaseUrl());
+		return endpoint;
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	public void stop()
+	{
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/** URL of the server, add /{dataset} for the endpoint of a dataset */
+	public String getBaseUrl()
+	{
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + "/sparql";
+	}
+
+	/** read every .ttl, .nt and .rdf file in dir, as a dataset named after the file */
+	public static Map<String, Model> loadFixtures (File dir) throws IOException
+	{
+		File[] files = dir.listFiles();
+		if (files == null) throw new IOException("Can't read fixture directory " + dir);
+		Map<String, Model> result = new HashMap<String, Model>();
+		for (File f : files)
+		{
+			String name = f.getName();
+			int dot = name.lastIndexOf('.');
+			if (dot < 0) continue;
+			String lang = getLanguage(name.substring(dot + 1));
+			if (lang == null) continue;
+			InputStream in = new FileInputStream(f);
+			try
+			{
+				result.put (name.substring(0, dot), read(in, f.toURI().toString(), lang));
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		return result;
+	}
+
+	/** the bundled fixtures, one dataset per endpoint of SparqlEndpoints */
+	public static Map<String, Model> loadBundledFixtures() throws IOException
+	{
+		Map<String, Model> result = new HashMap<String, Model>();
+		for (SparqlEndpoints.Endpoint endpoint : SparqlEndpoints.Endpoint.values())
+		{
+			String resource = BUNDLED + endpoint.getDataset() + ".ttl";
+			InputStream in = LocalSparqlEndpoint.class.getResourceAsStream(resource);
+			if (in == null) throw new IOException("Missing bundled fixture " + resource);
+			try
+			{
+				result.put (endpoint.getDataset(), read(in, "", "TURTLE"));
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		return result;
+	}
+
+	private static String getLanguage(String extension)
+	{
+		if ("ttl".equals(extension)) return "TURTLE";
+		if ("nt".equals(extension)) return "N-TRIPLE";
+		if ("rdf".equals(extension)) return "RDF/XML";
+		return null;
+	}
+
+	private static Model read(InputStream in, String base, String lang) throws IOException
+	{
+		Model model = ModelFactory.createDefaultModel();
+		try
+		{
+			model.read(in, base, lang);
+		}
+		catch (RuntimeException ex)
+		{
+			// Jena reports syntax errors unchecked
+			throw new IOException("Can't read fixture: " + ex.getMessage(), ex);
+		}
+		return model;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = DEFAULT_PORT;
+		int threads = DEFAULT_THREADS;
+		String bind = "127.0.0.1";
+		File fixtures = null;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			if ("--port".equals(args[i])) port = Integer.parseInt(args[i + 1]);
+			else if ("--threads".equals(args[i])) threads = Integer.parseInt(args[i + 1]);
+			else if ("--bind".equals(args[i])) bind = args[i + 1];
+			else if ("--fixtures".equals(args[i])) fixtures = new File(args[i + 1]);
+			else
+			{
+				System.err.println ("Usage: LocalSparqlEndpoint [--port N] [--bind ADDRESS] [--threads N] [--fixtures DIR]");
+				System.exit (1);
+			}
+		}
+
+		PreferenceManager.init();
+		Map<String, Model> datasets = fixtures == null ? loadBundledFixtures() : loadFixtures(fixtures);
+		LocalSparqlEndpoint endpoint = new LocalSparqlEndpoint(datasets, new InetSocketAddress(bind, port), threads);
+		endpoint.start();
+		for (String dataset : datasets.keySet())
+		{
+			System.err.println ("Serving " + dataset + " on " + endpoint.getBaseUrl() + "/" + dataset);
+		}
+	}
+
+	private class QueryHandler implements HttpHandler
+	{
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			try
+			{
+				String path = exchange.getRequestURI().getRawPath();
+				String name = URLDecoder.decode(path.substring("/sparql/".length()), "UTF-8");
+				Model model = datasets.get(name);
+				if (model == null)
+				{
+					sendError (exchange, 404, "Unknown dataset " + name);
+					return;
+				}
+
+				String form;
+				if ("GET".equals(exchange.getRequestMethod()))
+				{
+					form = exchange.getRequestURI().getRawQuery();
+				}
+				else if ("POST".equals(exchange.getRequestMethod()))
+				{
+					form = readBody(exchange);
+				}
+				else
+				{
+					sendError (exchange, 405, "Only GET and POST are supported");
+					return;
+				}
+				String query = SuggestionServer.parseQuery(form).get("query");
+				if (query == null)
+				{
+					sendError (exchange, 400, "Parameter query is required");
+					return;
+				}
+
+				ByteArrayOutputStream result = new ByteArrayOutputStream();
+				QueryExecution queryExecution = QueryExecutionFactory.create(query, model);
+				try
+				{
+					ResultSetFormatter.outputAsXML(result, queryExecution.execSelect());
+				}
+				finally
+				{
+					queryExecution.close();
+				}
+				SuggestionServer.send (exchange, 200, "application/sparql-results+xml", result.toByteArray());
+			}
+			catch (RuntimeException ex)
+			{
+				// mostly syntax errors in the query
+				Logger.log.warn ("Local SPARQL query failed", ex);
+				sendError (exchange, 400, "" + ex.getMessage());
+			}
+		}
+	}
+
+	private static String readBody(HttpExchange exchange) throws IOException
+	{
+		InputStream in = exchange.getRequestBody();
+		try
+		{
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+			{
+				body.write (buffer, 0, n);
+			}
+			return body.toString("UTF-8");
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		SuggestionServer.send (exchange, status, "text/plain", message.getBytes("UTF-8"));
+	}
+}
@@ -10,9 +10,14 @@ import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -26,10 +31,6 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.Model;
@@ -47,26 +48,38 @@ public class OpenPhacts {
 	 * @throws SAXException 
 	 */
 
+	/* Parsed queries by query text, so a query is parsed only once */
+	private static final ConcurrentMap<String, SparqlTemplate> parsed = new ConcurrentHashMap<String, SparqlTemplate>();
+
 	public static ResultSet runQuery(String sparqlQuery, Model model){
-		Query query = QueryFactory.create(sparqlQuery);
-		QueryExecution queryExecution = QueryExecutionFactory.create(query, model);
-		return queryExecution.execSelect();		
+		SparqlTemplate template = parsed.get(sparqlQuery);
+		if (template == null) {
+			template = new SparqlTemplate(sparqlQuery);
+			parsed.putIfAbsent(sparqlQuery, template);
+		}
+		return template.select(model);
 	}
 	/* getOpenPhactsAPI gets the results from the OpenPHACTS api. It submits the appropriate url's through curl and 
 	 * and ingests the triples in a Jena model
 	 */
 	public static Model getOpenPhactsAPI(String urlString) throws IOException{
-		URL url = new URL(urlString);		
-		InputStream is = url.openStream();
-		Model model = ModelFactory.createDefaultModel();
-		model.read(is, "", "TURTLE");
-		return model;
+		InputStream is = HttpTransport.get(urlString);
+		try {
+			Model model = ModelFactory.createDefaultModel();
+			model.read(is, "", "TURTLE");
+			return model;
+		} finally {
+			is.close();
+		}
 	}
 
-	public static ResultSet getUniProtSparql(String sparqlQuery) throws IOException{
-		Query query2 = QueryFactory.create(sparqlQuery);
-		QueryExecution queryExecution2 = QueryExecutionFactory.sparqlService("http://beta.sparql.uniprot.org", query2);
-		return 	queryExecution2.execSelect();
+	private static String getUniProtEndpoint(){
+		return SparqlEndpoints.get(SparqlEndpoints.Endpoint.PPP_SPARQL_UNIPROT);
+	}
+
+	/* Results come from the SparqlResultCache while they are fresh */
+	public static List<QuerySolution> getUniProtSparql(String sparqlQuery) throws IOException{
+		return SparqlResultCache.getShared().select(getUniProtEndpoint(), sparqlQuery);
 	}
 
 	/* The following set of calls are a SPARQL queries to get results from the model returns by 
@@ -83,11 +96,14 @@ public class OpenPhacts {
 		return sparqlQueryString;
 	}
 
-	public static ResultSet getCompoundPharmacologyPaginated(String compoundURI) throws IOException{
+	/* Targets of a compound, over all pages. Pages are streamed instead of
+	 * read into a model; the targets are the same as getTargetQuery gives for a page.
+	 */
+	public static PharmacologyPages getCompoundPharmacologyPaginated(String compoundURI) throws IOException{
 		String urlString = "https://beta.openphacts.org/compound/pharmacology/pages?uri=" +
 		URLEncoder.encode(compoundURI, "UTF-8")+
 		"&app_id=50320fbb&app_key=3ce7a56fa1b53aeaf10be712c3fd6a37&_format=ttl";		
-		return runQuery(getTargetQuery(), getOpenPhactsAPI(urlString));
+		return new PharmacologyPages(urlString);
 	}
 
 	// Get mapped identifiers out of 
@@ -105,38 +121,74 @@ public class OpenPhacts {
 		return runQuery(getOtherIdQuery(), getOpenPhactsAPI(urlString));
 	}
 
-	public static String getPrefLabelQuery(String uniprot){
-		String sparqlQueryString = "PREFIX up:<http://purl.uniprot.org/core/> " + 
-		"SELECT ?protein ?mnemonic " + 
+	private static final SparqlTemplate PREF_LABEL = new SparqlTemplate(
+		"PREFIX up:<http://purl.uniprot.org/core/> " + 
+		"SELECT ?mnemonic " + 
 		"WHERE " + 
 		"{ " + 
-		"<"+uniprot+"> a up:Protein . " + 
-		"<"+uniprot+"> up:mnemonic ?mnemonic " + 
+		"$protein a up:Protein . " + 
+		"$protein up:mnemonic ?mnemonic " + 
+		"}");
+
+	public static String getPrefLabelQuery(String uniprot){
+		return PREF_LABEL.bind("protein", SparqlTemplate.uri(uniprot));
+	}
+
+	public static List<QuerySolution> getTargetInformation( String url) throws IOException{
+		return PREF_LABEL.select(getUniProtEndpoint(), "protein", SparqlTemplate.uri(url));
+	}
+
+	/**
+	 * Query for the mnemonics of several UniProt entries at once,
+	 * with the entries in a VALUES block.
+	 */
+	public static String getPrefLabelsQuery(Collection<String> uniprots){
+		StringBuilder values = new StringBuilder();
+		for (String uniprot : uniprots) {
+			values.append(SparqlTemplate.format(SparqlTemplate.uri(uniprot))).append(" ");
+		}
+		return "PREFIX up:<http://purl.uniprot.org/core/> " +
+		"SELECT ?protein ?mnemonic " +
+		"WHERE " +
+		"{ " +
+		"VALUES ?protein { " + values + "} " +
+		"?protein a up:Protein . " +
+		"?protein up:mnemonic ?mnemonic " +
 		"}";
-		return sparqlQueryString;
 	}
 
-	public static ResultSet getTargetInformation( String url) throws IOException{
-		return getUniProtSparql(getPrefLabelQuery(url));
+	/**
+	 * Look up the mnemonics of several UniProt entries in a single query.
+	 * The query is sent as is, because older ARQ versions can't parse VALUES.
+	 * Aborted when the current CancellationToken is cancelled, and cached
+	 * by SparqlResultCache.
+	 * @return mnemonic by UniProt URI, for the entries that have one
+	 */
+	public static Map<String, String> getMnemonics(Collection<String> uniprots) throws IOException{
+		Map<String, String> result = new HashMap<String, String>();
+		if (uniprots.isEmpty()) return result;
+		for (QuerySolution solution : getUniProtSparql(getPrefLabelsQuery(uniprots))) {
+			String protein = solution.get("protein").toString();
+			if (!result.containsKey(protein)) {
+				result.put(protein, solution.get("mnemonic").toString());
+			}
+		}
+		return result;
 	}
 	
 	
 
 	public static void main(String[] args) throws URISyntaxException, ParserConfigurationException, SAXException, IOException {	
-		ResultSet resultSet = getCompoundPharmacologyPaginated("http://rdf.chemspider.com/187440");
-		while (resultSet.hasNext()) {
-			QuerySolution solution = resultSet.next();
-			String targetTitle = solution.get("targetTitle").toString();
-			String target = solution.get("target").toString();
+		PharmacologyPages targets = getCompoundPharmacologyPaginated("http://rdf.chemspider.com/187440");
+		String target;
+		while ((target = targets.next()) != null) {
 			//System.out.println(target);
 			ResultSet resultSet2 = getMapUrl(target);
 			while (resultSet2.hasNext()){
 				QuerySolution solution2 = resultSet2.next();
 				String otherId = solution2.get("otherId").toString();
 				if (otherId.contains("http://purl.uniprot.org/uniprot/")){
-					ResultSet resultSet3 = getTargetInformation(otherId);
-					while (resultSet3.hasNext()){
-						QuerySolution solution3 = resultSet3.next();
+					for (QuerySolution solution3 : getTargetInformation(otherId)){
 						String prefLabel = solution3.get("mnemonic").toString();
 						System.out.println(prefLabel+ "\t" +otherId.split("/")[otherId.split("/").length-1] + otherId);
 					}
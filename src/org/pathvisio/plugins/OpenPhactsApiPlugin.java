@@ -24,7 +24,16 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.bridgedb.IDMapperException;
 import org.bridgedb.DataSource;
@@ -44,8 +53,15 @@ import com.hp.hpl.jena.query.ResultSet;
  * Generates Putative Pathway Parts based on a 
  * HMDB metabolic network parsed and stored in MySQL by Andra.
  */
-public class OpenPhactsApiPlugin extends SuggestionAdapter 
+public class OpenPhactsApiPlugin extends SuggestionAdapter implements StreamingSuggestion
 {
+	/** concurrency limit group for the mapURL requests */
+	private static final String MAP_REQUESTS = "OpenPhacts mapURL";
+	/** concurrency limit group for the UniProt queries */
+	private static final String LABEL_REQUESTS = "UniProt SPARQL";
+	/** maximum number of UniProt entries in one query */
+	private static final int UNIPROT_BATCH = 50;
+
 	final GdbManager gdbManager;
 
 	OpenPhactsApiPlugin (GdbManager gdbManager)
@@ -54,6 +70,15 @@ public class OpenPhactsApiPlugin extends SuggestionAdapter
 	}
 
 	@Override public Pathway doSuggestion(PathwayElement input) throws SuggestionException
+	{
+		return doSuggestion(input, null);
+	}
+
+	/**
+	 * The targets are expanded by a Pipeline, and
+	 * spokes are passed to sink as soon as they are labelled.
+	 */
+	public Pathway doSuggestion(PathwayElement input, SpokeSink sink) throws SuggestionException
 	{
 		/*	try {
             // The newInstance() call is a work around for some
@@ -81,32 +106,7 @@ public class OpenPhactsApiPlugin extends SuggestionAdapter
 			pelt.setDataNodeType(input.getDataNodeType());
 
 			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
-			ResultSet compoundPharmacology = OpenPhacts.getCompoundPharmacologyPaginated("http://rdf.chemspider.com/"+input.getGeneID());
-			while (compoundPharmacology.hasNext()) {
-				QuerySolution solution = compoundPharmacology.next();
-				String targetTitle = solution.get("targetTitle").toString();
-				String target = solution.get("target").toString();
-				ResultSet resultSet2 = OpenPhacts.getMapUrl(target);
-				while (resultSet2.hasNext()){
-					QuerySolution solution2 = resultSet2.next();
-					String otherId = solution2.get("otherId").toString();
-					if (otherId.contains("http://purl.uniprot.org/uniprot/")){
-						ResultSet resultSet3 = OpenPhacts.getTargetInformation(otherId);
-						while (resultSet3.hasNext()){
-							QuerySolution solution3 = resultSet3.next();
-							String prefLabel = solution3.get("mnemonic").toString();
-							PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
-							pchildElt.setTextLabel(prefLabel);
-							pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
-							pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-							pchildElt.setDataSource(BioDataSource.UNIPROT);
-							pchildElt.setGeneID(otherId.split("/")[otherId.split("/").length-1]);
-							//System.out.println(prefLabel+ "\t" +otherId.split("/")[otherId.split("/").length-1]);
-							spokes.add (pchildElt);
-						}
-					}
-				}
-			}
+			new Pipeline(sink, spokes).run("http://rdf.chemspider.com/"+input.getGeneID());
 			
 			//String[] potentialExtentions = {"a", "b", "c", "d","e"};
 			
@@ -116,14 +116,196 @@ public class OpenPhactsApiPlugin extends SuggestionAdapter
 		catch (IDMapperException ex)
 		{
 			throw new SuggestionException(ex);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		}
+		catch (IOException ex)
+		{
+			// also a cancel; never return a partial result, it would be cached
+			throw new SuggestionException(ex);
 		}
 		return result;	
 
 	}
 
+	/**
+	 * The stages of a suggestion: the pharmacology pages, a mapURL request
+	 * per distinct target, and UniProt mnemonic queries for the distinct
+	 * UniProt entries, UNIPROT_BATCH entries per query.
+	 * <p>
+	 * A target is mapped as soon as it is read from a page, mapURL
+	 * requests run concurrently, and a UniProt query is sent as soon
+	 * as enough new entries have come in, while other mapURL requests are
+	 * still running. Each stage has its own concurrency limit group.
+	 * Spokes are collected, and passed to the sink, on the calling thread.
+	 */
+	private static class Pipeline
+	{
+		private final SpokeSink sink;
+		private final List<PathwayElement> spokes;
+		private final CancellationToken token = CancellationToken.current();
+		private final ExecutorService executor = SuggestionExecutors.getShared();
+
+		private final CompletionService<List<String>> mapped =
+			new ExecutorCompletionService<List<String>>(executor);
+		private final CompletionService<List<PathwayElement>> labelled =
+			new ExecutorCompletionService<List<PathwayElement>>(executor);
+		private final List<Future<?>> running = new ArrayList<Future<?>>();
+
+		/** UniProt entries seen so far, each is looked up once */
+		private final Set<String> uniprots = new HashSet<String>();
+		/** entries waiting for the next UniProt query */
+		private final List<String> batch = new ArrayList<String>();
+		private int mappings = 0;
+		private int labelQueries = 0;
+
+		Pipeline (SpokeSink sink, List<PathwayElement> spokes)
+		{
+			this.sink = sink;
+			this.spokes = spokes;
+		}
+
+		void run(String compoundUri) throws IOException, SuggestionException
+		{
+			try
+			{
+				// stage 1: targets are read page by page, and
+				// stage 2: each is mapped as soon as it is read
+				PharmacologyPages pages = OpenPhacts.getCompoundPharmacologyPaginated(compoundUri);
+				try
+				{
+					String target;
+					while ((target = pages.next()) != null)
+					{
+						token.check();
+						submitMapping (target);
+						collectMappings(false);
+					}
+				}
+				finally
+				{
+					pages.close();
+				}
+				collectMappings(true);
+
+				// stage 3: label the rest
+				if (!batch.isEmpty()) submitLabels();
+				collectLabels(true);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				throw new SuggestionException(ex);
+			}
+			catch (ExecutionException ex)
+			{
+				throw new SuggestionException(ex.getCause());
+			}
+			finally
+			{
+				for (Future<?> f : running) f.cancel(true);
+			}
+		}
+
+		private void submitMapping(final String target)
+		{
+			mappings++;
+			running.add (mapped.submit(SuggestionExecutors.task(MAP_REQUESTS, new Callable<List<String>>()
+			{
+				public List<String> call() throws IOException
+				{
+					return getUniprots(target);
+				}
+			})));
+		}
+
+		/**
+		 * Add the UniProt entries of finished mapURL requests to the batch,
+		 * and send a UniProt query whenever the batch is full.
+		 * @param all if true, wait for all requests, otherwise take only those that are done
+		 */
+		private void collectMappings(boolean all) throws InterruptedException, ExecutionException
+		{
+			while (mappings > 0)
+			{
+				Future<List<String>> done = all ? mapped.take() : mapped.poll();
+				if (done == null) return;
+				mappings--;
+				for (String uniprot : done.get())
+				{
+					if (uniprots.add (uniprot)) batch.add (uniprot);
+				}
+				if (batch.size() >= UNIPROT_BATCH) submitLabels();
+				collectLabels(false);
+			}
+		}
+
+		private void submitLabels()
+		{
+			final List<String> entries = new ArrayList<String>(batch);
+			batch.clear();
+			labelQueries++;
+			running.add (labelled.submit(SuggestionExecutors.task(LABEL_REQUESTS, new Callable<List<PathwayElement>>()
+			{
+				public List<PathwayElement> call() throws IOException
+				{
+					return createSpokes(entries, OpenPhacts.getMnemonics(entries));
+				}
+			})));
+		}
+
+		/**
+		 * Add the spokes of finished UniProt queries.
+		 * @param all if true, wait for all queries, otherwise take only those that are done
+		 */
+		private void collectLabels(boolean all) throws InterruptedException, ExecutionException
+		{
+			while (labelQueries > 0)
+			{
+				Future<List<PathwayElement>> done = all ? labelled.take() : labelled.poll();
+				if (done == null) return;
+				labelQueries--;
+				for (PathwayElement pchildElt : done.get())
+				{
+					spokes.add (pchildElt);
+					if (sink != null) sink.spoke (pchildElt.copy());
+				}
+			}
+		}
+	}
+
+	/** the UniProt entries a target maps to */
+	private static List<String> getUniprots(String target) throws IOException
+	{
+		List<String> result = new ArrayList<String>();
+		ResultSet resultSet2 = OpenPhacts.getMapUrl(target);
+		while (resultSet2.hasNext()){
+			QuerySolution solution2 = resultSet2.next();
+			String otherId = solution2.get("otherId").toString();
+			if (otherId.contains("http://purl.uniprot.org/uniprot/")){
+				result.add (otherId);
+			}
+		}
+		return result;
+	}
+
+	/** a spoke for each entry that has a mnemonic, in the order of entries */
+	private static List<PathwayElement> createSpokes(List<String> entries, Map<String, String> mnemonics)
+	{
+		List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+		for (String otherId : entries)
+		{
+			String prefLabel = mnemonics.get(otherId);
+			if (prefLabel == null) continue;
+			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+			pchildElt.setTextLabel(prefLabel);
+			pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
+			pchildElt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
+			pchildElt.setDataSource(BioDataSource.UNIPROT);
+			pchildElt.setGeneID(otherId.split("/")[otherId.split("/").length-1]);
+			spokes.add (pchildElt);
+		}
+		return spokes;
+	}
+
 	/**
 	 * @param args
 	 * @throws ConverterException 
@@ -34,12 +34,7 @@ import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
@@ -48,6 +43,14 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
  */
 public class OpenPhactsC2GPppPlugin extends SuggestionAdapter 
 {
+	/** genes interacting with the KEGG compound $compound */
+	private static final SparqlTemplate QUERY = new SparqlTemplate(
+			"PREFIX kegg: <http://chem2bio2rdf.org/kegg/resource/> select distinct ?gene where " +
+			"{?interaction a kegg:kegg_interaction ." +
+			" ?interaction kegg:compound_id $compound ." +
+			" ?interaction <http://www.w3.org/2000/01/rdf-schema#label> ?geneLabel ." +
+			" ?interaction kegg:CID_GENE ?gene}");
+
 	private GdbManager gdbManager;
 
 	public OpenPhactsC2GPppPlugin (GdbManager gdbManager)
@@ -66,17 +69,20 @@ public class OpenPhactsC2GPppPlugin extends SuggestionAdapter
 			}
 
 		List<PathwayElement> spokes = new ArrayList<PathwayElement>();	
-		String sparqlQueryString = "PREFIX kegg: <http://chem2bio2rdf.org/kegg/resource/> select distinct ?gene where " +
-				"{?interaction a kegg:kegg_interaction ." +
-				" ?interaction kegg:compound_id <http://chem2bio2rdf.org/kegg/resource/kegg_ligand/"+input.getGeneID()+"> ." +
-				" ?interaction <http://www.w3.org/2000/01/rdf-schema#label> ?geneLabel ." +
-				" ?interaction kegg:CID_GENE ?gene}";
+		List<QuerySolution> solutions;
+		try
+		{
+			solutions = QUERY.select(SparqlEndpoints.get(SparqlEndpoints.Endpoint.PPP_SPARQL_CHEM2BIO2RDF), "compound", SparqlTemplate.uri("http://chem2bio2rdf.org/kegg/resource/kegg_ligand/" + input.getGeneID()));
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new SuggestionException(ex);
+		}
 
-		
-		System.out.println(sparqlQueryString);
-		Query query = QueryFactory.create(sparqlQueryString);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService("http://192.168.10.231:8183/sparql", query);
-		ResultSet resultSet = queryExecution.execSelect();
 		PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 		pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 		pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
@@ -86,8 +92,7 @@ public class OpenPhactsC2GPppPlugin extends SuggestionAdapter
 		pelt.setCopyright("OpenPhacts (http://www.openphacts.org");
 		pelt.setDataNodeType(input.getDataNodeType());
 
-		while (resultSet.hasNext()) {
-			QuerySolution solution = resultSet.next();
+		for (QuerySolution solution : solutions) {
 			RDFNode compoundLabel = solution.get("gene");
 			RDFNode compoundId = solution.get("gene");
 			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
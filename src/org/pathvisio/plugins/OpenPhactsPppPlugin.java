@@ -34,12 +34,7 @@ import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
@@ -48,6 +43,15 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
  */
 public class OpenPhactsPppPlugin extends SuggestionAdapter 
 {
+	/** compounds interacting with the gene $gene */
+	private static final SparqlTemplate QUERY = new SparqlTemplate(
+			"PREFIX kegg: <http://chem2bio2rdf.org/kegg/resource/>  select distinct ?compoundLabel ?compoundId where " +
+			"{?interaction a kegg:kegg_interaction ." +
+			" ?interaction kegg:CID_GENE $gene ." +
+			" ?interaction kegg:compound_id ?compound ." +
+			" ?compound <http://www.w3.org/2000/01/rdf-schema#label> ?compoundLabel ." +
+			" ?compound kegg:comp_id ?compoundId}");
+
 	private GdbManager gdbManager;
 
 	public OpenPhactsPppPlugin (GdbManager gdbManager)
@@ -66,17 +70,20 @@ public class OpenPhactsPppPlugin extends SuggestionAdapter
 			}
 
 		List<PathwayElement> spokes = new ArrayList<PathwayElement>();		
-		String sparqlQueryString = "PREFIX kegg: <http://chem2bio2rdf.org/kegg/resource/>  select distinct ?compoundLabel ?compoundId where " +
-				"{?interaction a kegg:kegg_interaction ." +
-				" ?interaction kegg:CID_GENE <http://chem2bio2rdf.org/chemogenomics/resource/chemogenomics/"+input.getTextLabel()+"> ." +
-				" ?interaction kegg:compound_id ?compound ." +
-				" ?compound <http://www.w3.org/2000/01/rdf-schema#label> ?compoundLabel ." +
-				" ?compound kegg:comp_id ?compoundId}";
-		
-		System.out.println(sparqlQueryString);
-		Query query = QueryFactory.create(sparqlQueryString);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService("http://utopia2.cs.man.ac.uk:8183/sparql", query);
-		ResultSet resultSet = queryExecution.execSelect();
+		List<QuerySolution> solutions;
+		try
+		{
+			solutions = QUERY.select(SparqlEndpoints.get(SparqlEndpoints.Endpoint.PPP_SPARQL_CHEMOGENOMICS), "gene", SparqlTemplate.uri("http://chem2bio2rdf.org/chemogenomics/resource/chemogenomics/" + input.getTextLabel()));
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
+		}
+		catch (IllegalArgumentException ex)
+		{
+			throw new SuggestionException(ex);
+		}
+
 		PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 		pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 		pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
@@ -86,8 +93,7 @@ public class OpenPhactsPppPlugin extends SuggestionAdapter
 		pelt.setCopyright("OpenPhacts (http://www.openphacts.org");
 		pelt.setDataNodeType(input.getDataNodeType());
 
-		while (resultSet.hasNext()) {
-			QuerySolution solution = resultSet.next();
+		for (QuerySolution solution : solutions) {
 			RDFNode compoundLabel = solution.get("compoundLabel");
 			RDFNode compoundId = solution.get("compoundId");
 			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
@@ -1,6 +1,9 @@
 package org.pathvisio.plugins;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
@@ -50,4 +53,114 @@ public class PathwayBuilder
 		return result;		
 	}
 	
+    /**
+     * Returns the spokes of a network created by radialLayout,
+     * i.e. all data nodes except the hub.
+     *
+     * The returned elements are detached copies without a GraphId,
+     * so they can be passed to radialLayout again.
+     */
+	public static List<PathwayElement> getSpokes (Pathway part)
+	{
+		// the hub is where all connecting lines start.
+		String hubId = null;
+		for (PathwayElement elt : part.getDataObjects())
+		{
+			if (elt.getObjectType() == ObjectType.LINE)
+			{
+				hubId = elt.getStartGraphRef();
+				break;
+			}
+		}
+
+		List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+		boolean first = true;
+		for (PathwayElement elt : part.getDataObjects())
+		{
+			if (elt.getObjectType() != ObjectType.DATANODE) continue;
+			// without lines there are no spokes, only the hub.
+			boolean isHub = (hubId == null) ? first : hubId.equals(elt.getGraphId());
+			first = false;
+			if (isHub) continue;
+
+			PathwayElement spoke = elt.copy();
+			spoke.setGraphId(null);
+			spokes.add (spoke);
+		}
+		return spokes;
+	}
+
+    /**
+     * creates a network of several hubs, each surrounded by its spokes.
+     * 
+     * Hubs are placed on a grid. A spoke that belongs to more than one hub
+     * (the same object in several lists) is added only once, next to the
+     * first hub, and connected to all of its hubs.
+     * 
+     * The arguments should not be part of a Pathway yet.
+     */
+	public static Pathway networkLayout (List<PathwayElement> hubs, Map<PathwayElement, List<PathwayElement>> spokesByHub)
+	{
+		Pathway result = new Pathway();
+		double cell = 2 * RADIUS + 120;
+		int columns = (int)Math.ceil(Math.sqrt(hubs.size()));
+		Map<PathwayElement, Boolean> placed = new IdentityHashMap<PathwayElement, Boolean>();
+
+		// hubs first, a hub can also be a spoke of another hub
+		for (int i = 0; i < hubs.size(); ++i)
+		{
+			PathwayElement hub = hubs.get(i);
+			hub.setMCenterX(HUB_X + cell * (i % columns));
+			hub.setMCenterY(HUB_Y + cell * (i / columns));
+			result.add (hub);
+			hub.setGeneratedGraphId();
+			placed.put (hub, Boolean.TRUE);
+		}
+
+		for (PathwayElement hub : hubs)
+		{
+			List<PathwayElement> spokes = spokesByHub.get(hub);
+			if (spokes == null) continue;
+
+			List<PathwayElement> fresh = new ArrayList<PathwayElement>();
+			for (PathwayElement spoke : spokes)
+			{
+				if (!placed.containsKey(spoke))
+				{
+					fresh.add (spoke);
+					placed.put (spoke, Boolean.TRUE);
+				}
+			}
+			double angle = 0;
+			double incrementStep = (2* Math.PI)/Math.max(1, fresh.size());
+			for (PathwayElement spoke : fresh)
+			{
+				spoke.setMCenterX(hub.getMCenterX() + RADIUS * Math.cos(angle));
+				spoke.setMCenterY(hub.getMCenterY() + RADIUS * Math.sin(angle));
+				result.add (spoke);
+				spoke.setGeneratedGraphId();
+				angle += incrementStep;
+			}
+		}
+
+		for (PathwayElement hub : hubs)
+		{
+			List<PathwayElement> spokes = spokesByHub.get(hub);
+			if (spokes == null) continue;
+			for (PathwayElement spoke : spokes)
+			{
+				if (spoke == hub) continue;
+				PathwayElement connectElement = PathwayElement.createPathwayElement(ObjectType.LINE);
+				connectElement.setMStartX(hub.getMCenterX());
+				connectElement.setMStartY(hub.getMCenterY());
+				connectElement.setMEndX(spoke.getMCenterX());
+				connectElement.setMEndY(spoke.getMCenterY());
+				result.add (connectElement);
+				connectElement.setStartGraphRef(hub.getGraphId());
+				connectElement.setEndGraphRef(spoke.getGraphId());
+			}
+		}
+		return result;
+	}
+
 }
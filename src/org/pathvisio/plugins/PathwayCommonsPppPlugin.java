@@ -22,7 +22,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -97,9 +96,9 @@ public class PathwayCommonsPppPlugin implements Suggestion
 		}
 		
 
-		URL url = new URL(urlString);
 		int row = 0;
-		InputStream in2 = url.openStream();
+		InputStream in2 = HttpTransport.get(urlString);
+		try {
 		BufferedReader br2 = new BufferedReader(new InputStreamReader(in2));
 		while ((aLine = br2.readLine()) != null ) {
 			String[] velden = null;
@@ -125,6 +124,9 @@ public class PathwayCommonsPppPlugin implements Suggestion
 			
 			row++; //exclude row with headings
 		}
+		} finally {
+			in2.close();
+		}
 		
 		
 
@@ -0,0 +1,218 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.n3.turtle.TurtleEventHandler;
+import com.hp.hpl.jena.n3.turtle.parser.ParseException;
+import com.hp.hpl.jena.n3.turtle.parser.TokenMgrError;
+import com.hp.hpl.jena.n3.turtle.parser.TurtleParser;
+import com.hp.hpl.jena.vocabulary.DC;
+
+/**
+ * The targets of a compound, read from the paginated OpenPhacts
+ * compound pharmacology API one page at a time.
+ * <p>
+ * A page is parsed as a stream of triples, and only the targets found on
+ * it are kept, instead of a model of all pages. As soon as the parser
+ * comes across the link to the next page, that page is downloaded in the
+ * background, so it is usually there by the time the current page is used up.
+ * <p>
+ * Not thread safe: use an instance on one thread only.
+ */
+public class PharmacologyPages
+{
+	private static final String HAS_TARGET = "http://rdf.farmbio.uu.se/chembl/onto/#hasTarget";
+	private static final String NEXT = "http://www.w3.org/1999/xhtml/vocab#next";
+	/** concurrency limit group for page downloads */
+	private static final String PAGE_REQUESTS = "OpenPhacts pages";
+
+	/** pages fetched so far, so a page linking back can't cause a loop */
+	private final Set<String> visited = new HashSet<String>();
+	/** targets returned so far, each target is returned once */
+	private final Set<String> seen = new HashSet<String>();
+	/** targets of the current page that haven't been returned yet */
+	private final LinkedList<String> targets = new LinkedList<String>();
+
+	private Future<byte[]> nextPage = null;
+	private String nextUrl = null;
+
+	/**
+	 * Start downloading the first page.
+	 * @param url the first page of /compound/pharmacology/pages, in Turtle format
+	 */
+	public PharmacologyPages (String url)
+	{
+		prefetch (url);
+	}
+
+	/**
+	 * The next target, downloading and parsing the next page if needed.
+	 * @return the target URI, or null after the last page
+	 */
+	public String next() throws IOException
+	{
+		while (targets.isEmpty())
+		{
+			if (nextPage == null) return null;
+			readPage();
+		}
+		return targets.removeFirst();
+	}
+
+	/** stop a running page download, call this when not reading all targets */
+	public void close()
+	{
+		if (nextPage != null) nextPage.cancel(true);
+		nextPage = null;
+	}
+
+	private void prefetch (final String url)
+	{
+		if (!visited.add(url)) return;
+		nextUrl = url;
+		nextPage = SuggestionExecutors.getShared().submit(
+				SuggestionExecutors.task(PAGE_REQUESTS, new Callable<byte[]>()
+		{
+			public byte[] call() throws IOException
+			{
+				return download(url);
+			}
+		}));
+	}
+
+	private void readPage() throws IOException
+	{
+		String base = nextUrl;
+		byte[] page = await(nextPage);
+		nextPage = null;
+
+		PageHandler handler = new PageHandler();
+		TurtleParser parser = new TurtleParser(new InputStreamReader(new ByteArrayInputStream(page), "UTF-8"));
+		parser.setEventHandler(handler);
+		parser.setBaseURI(base);
+		try
+		{
+			parser.parse();
+		}
+		catch (ParseException ex)
+		{
+			throw new IOException("Can't parse " + base + ": " + ex.getMessage(), ex);
+		}
+		catch (TokenMgrError ex)
+		{
+			throw new IOException("Can't parse " + base + ": " + ex.getMessage(), ex);
+		}
+
+		// as before, only targets that have a title
+		for (String target : handler.linked)
+		{
+			if (handler.titled.contains(target) && seen.add(target)) targets.add (target);
+		}
+	}
+
+	private static byte[] await (Future<byte[]> page) throws IOException
+	{
+		try
+		{
+			return page.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a page");
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof IOException) throw (IOException)ex.getCause();
+			if (ex.getCause() instanceof RuntimeException) throw (RuntimeException)ex.getCause();
+			// cancelled while waiting for a permit
+			throw new InterruptedIOException("" + ex.getCause().getMessage());
+		}
+	}
+
+	private static byte[] download (String url) throws IOException
+	{
+		InputStream is = HttpTransport.get(url);
+		try
+		{
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+			int n;
+			while ((n = is.read(buffer)) != -1)
+			{
+				result.write (buffer, 0, n);
+			}
+			return result.toByteArray();
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	/**
+	 * Picks the targets and the next page link out of the triples of a page.
+	 */
+	private class PageHandler implements TurtleEventHandler
+	{
+		/** objects of hasTarget, in document order */
+		private final Set<String> linked = new LinkedHashSet<String>();
+		/** subjects with a title */
+		private final Set<String> titled = new HashSet<String>();
+
+		public void triple(int line, int col, Triple triple)
+		{
+			String predicate = triple.getPredicate().getURI();
+			Node subject = triple.getSubject();
+			Node object = triple.getObject();
+			if (HAS_TARGET.equals(predicate) && object.isURI())
+			{
+				linked.add (object.getURI());
+			}
+			else if (DC.title.getURI().equals(predicate) && subject.isURI())
+			{
+				titled.add (subject.getURI());
+			}
+			else if (NEXT.equals(predicate) && object.isURI() && nextPage == null)
+			{
+				prefetch (object.getURI());
+			}
+		}
+
+		public void prefix(int line, int col, String prefix, String iri) {}
+
+		public void startFormula(int line, int col) {}
+
+		public void endFormula(int line, int col) {}
+	}
+}
@@ -21,19 +21,13 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.rpc.ServiceException;
 
-import keggapi.KEGGLocator;
-import keggapi.KEGGPortType;
-
 import org.bridgedb.IDMapperException;
 import org.bridgedb.DataSource;
 import org.bridgedb.Xref;
@@ -70,9 +64,7 @@ public class PhasarPppPlugin implements Suggestion
     {
     	String textfromKeggId = "";
     	try {
-			KEGGLocator    locator  = new KEGGLocator();
-			KEGGPortType   serv     = locator.getKEGGPort();
-			textfromKeggId = serv.btit(KeggID);
+			textfromKeggId = KeggGateway.getInstance().getTitle(KeggID);
 	    	
 		} catch (ServiceException e) {
 			e.printStackTrace();
@@ -83,6 +75,29 @@ public class PhasarPppPlugin implements Suggestion
 
     }
     
+    /**
+     * Look up the KEGG names of all enzymes and compounds in the
+     * Phasar answer at once, instead of one request per identifier.
+     */
+    private Map<String, String> getKeggNames(NodeList list) throws SuggestionException
+    {
+    	List<String> keggIds = new ArrayList<String>();
+		for(int i = 0, length = list.getLength(); i < length; i++){
+			Element neighbour  = (Element)list.item(i);
+			String identifier = neighbour.getAttribute("name");
+			String type = neighbour.getAttribute("type");
+			if (type.equals("enzyme")) keggIds.add ("ec:" + identifier.substring(3));
+			if (type.equals("compound")) keggIds.add ("cpd:" + identifier);
+		}
+		try {
+			return KeggGateway.getInstance().getTitles(keggIds);
+		} catch (ServiceException e) {
+			throw new SuggestionException(e);
+		} catch (RemoteException e) {
+			throw new SuggestionException(e);
+		}
+    }
+    
 	public Pathway doSuggestion(PathwayElement input) throws SuggestionException
 	{        
 	    int row = 0;
@@ -116,20 +131,21 @@ public class PhasarPppPlugin implements Suggestion
 		System.out.println(urlString);
 		org.w3c.dom.Document doc = null;
 		try {
-			URL url = new URL(urlString);
-			urlInputStream = url.openConnection().getInputStream();
-			DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			doc = db.parse(urlInputStream);
+			urlInputStream = HttpTransport.get(urlString);
+			try {
+				doc = XmlParsers.parse(urlInputStream);
+			} finally {
+				urlInputStream.close();
+			}
 		} catch (SAXException e) {
 			throw new SuggestionException(e);
-		} catch (ParserConfigurationException e) {
-			throw new SuggestionException(e);
 		} catch (IOException e) {
 			throw new SuggestionException(e);
 		}
 		
 		List<PathwayElement> spokes = new ArrayList<PathwayElement>();
 		NodeList list = doc.getElementsByTagName("identifier");
+		Map<String, String> titles = getKeggNames(list);
 		for(int i = 0, length = list.getLength(); i < length; i++){
 			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 	    	
@@ -145,7 +161,7 @@ public class PhasarPppPlugin implements Suggestion
 	    		pchildElt.setDataNodeType(DataNodeType.GENEPRODUCT);
 	    		pchildElt.setDataSource(BioDataSource.ENZYME_CODE);
 	    		pchildElt.setGeneID(identifier.getTextContent().substring(3)); 
-	    		btitTextLabel = this.getKeggName("ec:"+ReturnedPhasarResult.substring(3));
+	    		btitTextLabel = titles.get("ec:"+ReturnedPhasarResult.substring(3));
 	    		String[] textLabel = btitTextLabel.split(";");
 		    	
 		    	String[] textLabel2 = textLabel[0].split(" ");
@@ -162,7 +178,7 @@ public class PhasarPppPlugin implements Suggestion
 	    		pchildElt.setDataSource(BioDataSource.KEGG_COMPOUND);
 	    		pchildElt.setGeneID(identifier.getTextContent()); 
 	    		// System.out.println("Find getKeggName vanuit main:"+this.getKeggName("cpd:"+ReturnedPhasarResult));
-	    		btitTextLabel = this.getKeggName("cpd:"+ReturnedPhasarResult);
+	    		btitTextLabel = titles.get("cpd:"+ReturnedPhasarResult);
 	    		String[] textLabel = btitTextLabel.split(";");
 		    	
 		    	String[] textLabel2 = textLabel[0].split(" ");
@@ -0,0 +1,509 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.IDMapperException;
+import org.bridgedb.bio.BioDataSource;
+import org.pathvisio.core.data.GdbManager;
+import org.pathvisio.core.model.ConverterException;
+import org.pathvisio.core.model.ObjectType;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+import org.pathvisio.core.preferences.PreferenceManager;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+/**
+ * Headless batch runner for Pathway Loom suggestions, e.g. to precompute
+ * the suggestions for a whole pathway collection on a server.
+ * Does not need Swing or PvDesktop.
+ * <p>
+ * Input is any number of GPML files, directories of GPML files, and
+ * text files with one data node per line: system code, tab, identifier,
+ * and optionally tab, label and tab, data node type. Lines starting with # are skipped.
+ * Each distinct data node is queried once per source. Queries run in
+ * parallel, on virtual threads if possible, with at most PPP_MAX_PER_PROVIDER
+ * running per source; a BatchSuggestion gets all its inputs in one call.
+ * <p>
+ * Output is either one GPML file per source and input node in a directory,
+ * or a single TSV file with one line per suggested node.
+ * Run without arguments for the options.
+ */
+public class PppBatchRunner
+{
+	/** default number of concurrent queries */
+	private static final int DEFAULT_THREADS = 4;
+	/** default maximum time in seconds for the whole run */
+	private static final long DEFAULT_TIMEOUT = 4 * 60 * 60;
+
+	private static final String USAGE =
+		"Usage: PppBatchRunner [options] <input>...\n" +
+		"  <input>            GPML file, directory of GPML files, or text file with\n" +
+		"                     lines of system code <tab> id [<tab> label [<tab> type]]\n" +
+		"Options:\n" +
+		"  -s, --source NAME  source to query, may be repeated (default: all)\n" +
+		"  -l, --list         list the available sources and exit\n" +
+		"  -o, --output PATH  output directory (gpml) or file (tsv), default: standard output (tsv only)\n" +
+		"  -f, --format FMT   gpml or tsv (default: tsv)\n" +
+		"  -g, --gdb FILE     BridgeDb database for identifier mapping\n" +
+		"  -t, --threads N    number of concurrent queries without virtual threads (default: " + DEFAULT_THREADS + ")\n" +
+		"  --timeout SECONDS  give up on queries that have not finished after this time (default: " + DEFAULT_TIMEOUT + ")\n" +
+		"  --no-cache         don't use or fill the suggestion cache\n" +
+		"  --local-sparql DIR answer SPARQL queries from the fixtures in DIR instead of the\n" +
+		"                     live endpoints, or from the bundled fixtures if DIR is \"bundled\"\n" +
+		"  --record DIR       store all requests and responses of the providers in DIR\n" +
+		"  --replay DIR       answer all provider requests from the recording in DIR, offline\n" +
+		"  --profile P        network conditions for --replay: none (default), lan, broadband,\n" +
+		"                     mobile, or latency:jitter:bytesPerSecond, e.g. 100:20:500000\n";
+
+	private final List<String> sourceNames = new ArrayList<String>();
+	private final List<File> inputFiles = new ArrayList<File>();
+	private File output = null;
+	private boolean gpml = false;
+	private File gdbFile = null;
+	private int threads = DEFAULT_THREADS;
+	private long timeout = DEFAULT_TIMEOUT;
+	private boolean useCache = true;
+	private String localSparql = null;
+	private File archive = null;
+	private ReplayServer.Mode archiveMode = null;
+	private ReplayServer.Profile profile = ReplayServer.Profile.NONE;
+	private boolean list = false;
+
+	/** Thrown for invalid command line arguments */
+	static class UsageException extends Exception
+	{
+		UsageException (String message)
+		{
+			super (message);
+		}
+	}
+
+	public static void main(String[] args)
+	{
+		PppBatchRunner runner = new PppBatchRunner();
+		try
+		{
+			runner.parseArgs(args);
+			System.exit (runner.run());
+		}
+		catch (UsageException ex)
+		{
+			System.err.println (ex.getMessage());
+			System.err.print (USAGE);
+			System.exit (1);
+		}
+		catch (Exception ex)
+		{
+			ex.printStackTrace();
+			System.exit (1);
+		}
+	}
+
+	void parseArgs(String[] args) throws UsageException
+	{
+		for (int i = 0; i < args.length; ++i)
+		{
+			String arg = args[i];
+			if ("-s".equals(arg) || "--source".equals(arg)) sourceNames.add (value(args, ++i, arg));
+			else if ("-l".equals(arg) || "--list".equals(arg)) list = true;
+			else if ("-o".equals(arg) || "--output".equals(arg)) output = new File(value(args, ++i, arg));
+			else if ("-g".equals(arg) || "--gdb".equals(arg)) gdbFile = new File(value(args, ++i, arg));
+			else if ("--no-cache".equals(arg)) useCache = false;
+			else if ("--local-sparql".equals(arg)) localSparql = value(args, ++i, arg);
+			else if ("--record".equals(arg) || "--replay".equals(arg))
+			{
+				if (archive != null) throw new UsageException("Use only one of --record and --replay");
+				archive = new File(value(args, ++i, arg));
+				archiveMode = "--record".equals(arg) ? ReplayServer.Mode.RECORD : ReplayServer.Mode.REPLAY;
+			}
+			else if ("--profile".equals(arg))
+			{
+				try
+				{
+					profile = ReplayServer.Profile.parse(value(args, ++i, arg));
+				}
+				catch (IllegalArgumentException ex)
+				{
+					throw new UsageException(ex.getMessage());
+				}
+			}
+			else if ("-f".equals(arg) || "--format".equals(arg))
+			{
+				String format = value(args, ++i, arg);
+				if ("gpml".equalsIgnoreCase(format)) gpml = true;
+				else if ("tsv".equalsIgnoreCase(format)) gpml = false;
+				else throw new UsageException("Unknown format " + format);
+			}
+			else if ("-t".equals(arg) || "--threads".equals(arg)) threads = number(value(args, ++i, arg), arg);
+			else if ("--timeout".equals(arg)) timeout = number(value(args, ++i, arg), arg);
+			else if (arg.startsWith("-") && arg.length() > 1) throw new UsageException("Unknown option " + arg);
+			else inputFiles.add (new File(arg));
+		}
+		if (list) return;
+		if (inputFiles.isEmpty()) throw new UsageException("No input given");
+		if (gpml && output == null) throw new UsageException("GPML output needs an output directory");
+	}
+
+	private static String value(String[] args, int i, String option) throws UsageException
+	{
+		if (i >= args.length) throw new UsageException("Missing value for " + option);
+		return args[i];
+	}
+
+	private static int number(String value, String option) throws UsageException
+	{
+		try
+		{
+			int result = Integer.parseInt(value);
+			if (result > 0) return result;
+		}
+		catch (NumberFormatException ex)
+		{
+			// reported below
+		}
+		throw new UsageException(option + " needs a positive number, not " + value);
+	}
+
+	/** one query: a source for a single input, or for all inputs of a BatchSuggestion */
+	private static class Task implements Callable<Map<PathwayElement, Pathway>>
+	{
+		final String source;
+		final Suggestion suggestion;
+		final List<PathwayElement> inputs;
+
+		Task (String source, Suggestion suggestion, List<PathwayElement> inputs)
+		{
+			this.source = source;
+			this.suggestion = suggestion;
+			this.inputs = inputs;
+		}
+
+		public Map<PathwayElement, Pathway> call() throws SuggestionException
+		{
+			if (suggestion instanceof BatchSuggestion)
+			{
+				return ((BatchSuggestion)suggestion).doBatchSuggestion(inputs);
+			}
+			PathwayElement input = inputs.get(0);
+			Pathway result = suggestion.doSuggestion(input);
+			if (result == null) return Collections.<PathwayElement, Pathway>emptyMap();
+			return Collections.singletonMap(input, result);
+		}
+	}
+
+	/**
+	 * Run all queries and write the results.
+	 * @return the exit code: 0 if all queries succeeded, 2 if some failed
+	 */
+	int run() throws IOException, ConverterException, IDMapperException, UsageException
+	{
+		PreferenceManager.init();
+		BioDataSource.init();
+
+		GdbManager gdbManager = null;
+		if (gdbFile != null)
+		{
+			gdbManager = new GdbManager();
+			gdbManager.setGeneDb("" + gdbFile);
+		}
+		SuggestionRegistry registry = new SuggestionRegistry(gdbManager,
+				useCache ? SuggestionCache.fromPreferences() : null);
+
+		if (list)
+		{
+			for (String name : registry.getSources().keySet())
+			{
+				System.out.println (name);
+			}
+			return 0;
+		}
+
+		if (sourceNames.isEmpty()) sourceNames.addAll (registry.getSources().keySet());
+		for (String name : sourceNames)
+		{
+			if (registry.get(name) == null) throw new UsageException("Unknown source " + name + ", use --list to see all sources");
+		}
+
+		List<PathwayElement> elements = new ArrayList<PathwayElement>();
+		for (File f : inputFiles)
+		{
+			readInput (f, elements);
+		}
+
+		LocalSparqlEndpoint sparql = null;
+		if (localSparql != null)
+		{
+			sparql = LocalSparqlEndpoint.startForProviders("bundled".equals(localSparql) ? null : new File(localSparql));
+			System.err.println ("Answering SPARQL queries from " + sparql.getBaseUrl());
+		}
+		ReplayServer replay = null;
+		if (archive != null)
+		{
+			replay = ReplayServer.startForProviders(archive, archiveMode, profile);
+			System.err.println ((archiveMode == ReplayServer.Mode.RECORD ? "Recording to " : "Replaying from ") + archive);
+		}
+
+		ExecutorService executor = SuggestionExecutors.create(threads);
+		CompletionService<Map<PathwayElement, Pathway>> completion =
+			new ExecutorCompletionService<Map<PathwayElement, Pathway>>(executor);
+		Map<Future<Map<PathwayElement, Pathway>>, Task> pending =
+			new HashMap<Future<Map<PathwayElement, Pathway>>, Task>();
+		for (String name : sourceNames)
+		{
+			Suggestion suggestion = registry.get(name);
+			List<PathwayElement> inputs = SuggestionBatch.getInputs(suggestion, elements);
+			if (inputs.isEmpty()) continue;
+			if (suggestion instanceof BatchSuggestion)
+			{
+				Task task = new Task(name, suggestion, inputs);
+				pending.put (completion.submit(SuggestionExecutors.task(name, task)), task);
+			}
+			else for (PathwayElement input : inputs)
+			{
+				Task task = new Task(name, suggestion, Collections.singletonList(input));
+				pending.put (completion.submit(SuggestionExecutors.task(name, task)), task);
+			}
+		}
+		System.err.println ("Running " + pending.size() + " queries for " + elements.size() + " data nodes");
+
+		ResultWriter writer = gpml ? new GpmlWriter(output) : new TsvWriter(output);
+		int failed = 0;
+		int done = 0;
+		long deadline = System.currentTimeMillis() + timeout * 1000;
+		try
+		{
+			while (!pending.isEmpty())
+			{
+				long wait = deadline - System.currentTimeMillis();
+				Future<Map<PathwayElement, Pathway>> f = wait > 0 ? completion.poll(wait, TimeUnit.MILLISECONDS) : null;
+				if (f == null)
+				{
+					System.err.println ("Timeout, " + pending.size() + " queries did not finish");
+					failed += pending.size();
+					break;
+				}
+				Task task = pending.remove(f);
+				done++;
+				try
+				{
+					boolean written = true;
+					for (Map.Entry<PathwayElement, Pathway> e : f.get().entrySet())
+					{
+						// a result that can't be written fails only its own query
+						try
+						{
+							writer.write (task.source, e.getKey(), e.getValue());
+						}
+						catch (ConverterException ex)
+						{
+							written = false;
+							System.err.println (task.source + " result for " + SuggestionBatch.getKey(e.getKey()) + " could not be written: " + ex);
+						}
+						catch (IOException ex)
+						{
+							written = false;
+							System.err.println (task.source + " result for " + SuggestionBatch.getKey(e.getKey()) + " could not be written: " + ex);
+						}
+					}
+					if (!written) failed++;
+				}
+				catch (ExecutionException ex)
+				{
+					failed++;
+					System.err.println (task.source + " failed for " + describe(task.inputs) + ": " + ex.getCause());
+				}
+				if (done % 100 == 0) System.err.println (done + " queries done");
+			}
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			failed += pending.size();
+		}
+		finally
+		{
+			executor.shutdownNow();
+			writer.close();
+			if (sparql != null) sparql.stop();
+			if (replay != null) replay.stop();
+		}
+		System.err.println ("Finished, " + failed + " queries failed");
+		return failed == 0 ? 0 : 2;
+	}
+
+	private static String describe(List<PathwayElement> inputs)
+	{
+		if (inputs.size() == 1) return SuggestionBatch.getKey(inputs.get(0));
+		return inputs.size() + " data nodes";
+	}
+
+	/**
+	 * Add the data nodes of a GPML file, all GPML files in a directory,
+	 * or the lines of a data node list to elements.
+	 */
+	static void readInput(File f, List<PathwayElement> elements) throws IOException, ConverterException
+	{
+		if (f.isDirectory())
+		{
+			File[] files = f.listFiles();
+			if (files == null) throw new IOException("Can't list " + f);
+			Arrays.sort (files);
+			for (File child : files)
+			{
+				if (child.getName().toLowerCase().endsWith(".gpml")) readInput (child, elements);
+			}
+		}
+		else if (f.getName().toLowerCase().endsWith(".gpml"))
+		{
+			Pathway p = new Pathway();
+			p.readFromXml(f, true);
+			for (PathwayElement elt : p.getDataObjects())
+			{
+				if (elt.getObjectType() == ObjectType.DATANODE) elements.add (elt);
+			}
+		}
+		else
+		{
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+			try
+			{
+				String line;
+				int lineNo = 0;
+				while ((line = reader.readLine()) != null)
+				{
+					lineNo++;
+					if (line.trim().length() == 0 || line.startsWith("#")) continue;
+					String[] fields = line.split("\t");
+					if (fields.length < 2)
+					{
+						throw new IOException(f + ":" + lineNo + ": expected system code <tab> identifier");
+					}
+					DataSource ds = DataSource.getBySystemCode(fields[0].trim());
+					PathwayElement elt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+					elt.setDataSource(ds);
+					elt.setGeneID(fields[1].trim());
+					elt.setTextLabel(fields.length > 2 ? fields[2].trim() : fields[1].trim());
+					if (fields.length > 3) elt.setDataNodeType(fields[3].trim());
+					elements.add (elt);
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+	}
+
+	/** Receives results on the thread that runs the batch */
+	interface ResultWriter
+	{
+		void write (String source, PathwayElement input, Pathway result) throws IOException, ConverterException;
+		void close() throws IOException;
+	}
+
+	/**
+	 * Writes each result to its own GPML file,
+	 * named after the source and the input node.
+	 */
+	static class GpmlWriter implements ResultWriter
+	{
+		private final File dir;
+
+		GpmlWriter (File dir) throws IOException
+		{
+			this.dir = dir;
+			if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Can't create directory " + dir);
+		}
+
+		public void write(String source, PathwayElement input, Pathway result) throws ConverterException
+		{
+			String name = source + "_" + SuggestionBatch.getKey(input);
+			result.writeToXml(new File(dir, name.replaceAll("[^A-Za-z0-9._-]", "_") + ".gpml"), true);
+		}
+
+		public void close() {}
+	}
+
+	/**
+	 * Writes one line per suggested node: source, input system code, id and label,
+	 * suggested system code, id, label and data node type.
+	 */
+	static class TsvWriter implements ResultWriter
+	{
+		private final PrintWriter out;
+		private final boolean closeOut;
+
+		TsvWriter (File file) throws IOException
+		{
+			closeOut = file != null;
+			out = new PrintWriter(file == null ?
+					new OutputStreamWriter(System.out, "UTF-8") :
+					new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+			out.println ("source\tinput_code\tinput_id\tinput_label\tcode\tid\tlabel\ttype");
+		}
+
+		public void write(String source, PathwayElement input, Pathway result)
+		{
+			for (PathwayElement spoke : PathwayBuilder.getSpokes(result))
+			{
+				out.println (source + "\t" + fields(input) + "\t" + fields(spoke) + "\t" + clean(spoke.getDataNodeType()));
+			}
+		}
+
+		private static String fields(PathwayElement elt)
+		{
+			DataSource ds = elt.getDataSource();
+			return clean(ds == null ? null : ds.getSystemCode()) + "\t" +
+				clean(elt.getGeneID()) + "\t" + clean(elt.getTextLabel());
+		}
+
+		/** no tabs or line breaks inside a field */
+		private static String clean(String value)
+		{
+			return value == null ? "" : value.replaceAll("[\t\r\n]+", " ");
+		}
+
+		public void close()
+		{
+			out.flush();
+			if (closeOut) out.close();
+		}
+	}
+}
@@ -143,6 +143,22 @@ public class PppPane extends JPanel
 		validate();
 	}
 
+	/**
+	 * Show the spokes found so far by a suggestion that is still running.
+	 * Replaced by the next call, or by addPart with the final result.
+	 * @param hub the input element, it is copied
+	 * @param spokes the spokes so far, they are copied
+	 */
+	public void showPartial(String desc, PathwayElement hub, List<PathwayElement> spokes)
+	{
+		List<PathwayElement> copies = new ArrayList<PathwayElement>();
+		for (PathwayElement spoke : spokes)
+		{
+			copies.add (spoke.copy());
+		}
+		addPart(desc + " (" + spokes.size() + " so far...)", PathwayBuilder.radialLayout(hub.copy(), copies));
+	}
+
 	/**
 	 * Create a new Ppp Pane with Help button. Parts can be added later.
 	 */
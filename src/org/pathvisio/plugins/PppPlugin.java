@@ -33,9 +33,13 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 
 import java.util.logging.Level;
 import javax.swing.AbstractAction;
@@ -60,13 +64,16 @@ import org.pathvisio.core.gpmldiff.PwyDoc;
 import org.pathvisio.core.model.ConverterException;
 import org.pathvisio.core.model.GpmlFormat;
 import org.pathvisio.core.model.Pathway;
-import org.pathvisio.core.util.ProgressKeeper;
+import org.pathvisio.core.model.PathwayElement;
 import org.pathvisio.core.view.GeneProduct;
+import org.pathvisio.core.view.Graphics;
 import org.pathvisio.core.view.VPathwayElement;
 import org.pathvisio.desktop.PvDesktop;
 import org.pathvisio.desktop.plugin.Plugin;
 import org.pathvisio.gui.ProgressDialog;
 import org.pathvisio.gui.PathwayElementMenuListener.PathwayElementMenuHook;
+import org.pathvisio.plugins.CancellationToken.CancellingProgressKeeper;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -87,6 +94,11 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 	public static final double DATANODE_MWIDTH = 60;
 	public static final double DATANODE_MHEIGHT = 20;
 
+	/** number of sources that "All sources" queries at the same time */
+	private static final int FAN_OUT_THREADS = 8;
+	/** maximum time in milliseconds a single source may take during "All sources" */
+	private static final long FAN_OUT_TIMEOUT = 60000;
+
 	private PvDesktop desktop;
 	PppPane pane;
 	SuggestionAction openPhactsActionCompoundByGene;
@@ -116,8 +128,16 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 	SuggestionAction openPhactsSparql;
 	SuggestionAction localInteractionGpml;
 	SuggestionAction openPhactsCompoundPharmaAPI;
+	SuggestionAction allSourcesAction;
 
 	ArrayList<SuggestionAction> cwSAList;
+	/** one batch action per registered source */
+	private final List<BatchAction> batchActions = new ArrayList<BatchAction>();
+
+	/** all registered suggestions, by display name */
+	private final Map<String, Suggestion> sources = new LinkedHashMap<String, Suggestion>();
+	private ExecutorService executor;
+	private SuggestionCache cache;
 
 
 
@@ -143,31 +163,52 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 		desktop.addPathwayElementMenuHook(this);
 		this.desktop = desktop;
 		GdbManager gdbManager = desktop.getSwingEngine().getGdbManager();
-		hmdbPppAction = new SuggestionAction(this, "HMDB", new HmdbPppPlugin(gdbManager));
-		keggGeneByEnzyme = new SuggestionAction(this, "Kegg (Gene by enzyme)", new KeggPppPlugin_getGenesByEnzymes(gdbManager));
-		keggEnzymeByGene = new SuggestionAction(this, "Kegg (Enzyme by gene)", new KeggPppPlugin_getEnzymesByGene(gdbManager));
-		keggEnzymeByCompound = new SuggestionAction(this, "Kegg (Enzyme by compound)", new KeggPppPlugin_getEnzymesByCompound(gdbManager));
-		localPppAction = new SuggestionAction(this, "WikiPathways (local)", new LocalPathways());
-		pathwayCommonsAll = new SuggestionAction(this, "All", new PathwayCommonsPppPlugin(gdbManager, PathwayCommonsPppPlugin.SOURCE_ALL));
-		pathwayCommonsBiogrid = new SuggestionAction(this, "BIOGRID", new PathwayCommonsPppPlugin(gdbManager, "BIOGRID"));
-		pathwayCommonsCell_Map = new SuggestionAction(this, "CELL_MAP", new PathwayCommonsPppPlugin(gdbManager, "CELL_MAP"));
-		pathwayCommonsHprd = new SuggestionAction(this, "HPRD", new PathwayCommonsPppPlugin(gdbManager, "HPRD"));
-		pathwayCommonsHumancyc = new SuggestionAction(this, "HUMAN_CYC", new PathwayCommonsPppPlugin(gdbManager, "HUMANCYC"));
-		pathwayCommonsIntact = new SuggestionAction(this, "INTACT", new PathwayCommonsPppPlugin(gdbManager, "INTACT"));
-		pathwayCommonsMint = new SuggestionAction(this, "MINT", new PathwayCommonsPppPlugin(gdbManager, "MINT"));
-		pathwayCommonsNci_Nature = new SuggestionAction(this, "NCI_NATURE", new PathwayCommonsPppPlugin(gdbManager, "NCI_NATURE"));
-		pathwayCommonsReactome = new SuggestionAction(this, "REACTOME", new PathwayCommonsPppPlugin(gdbManager, "REACTOME"));
-		bindPppAction = new SuggestionAction(this, "Bind", new BindPppPlugin(gdbManager));
-		whatizitPppAction = new SuggestionAction(this, "Whatizit", new WhatizitPppPlugin(gdbManager));
-		wikiPathwaysAction = new SuggestionAction(this, "WikiPathways", new WikiPathwaysPppPlugin(gdbManager));
-		conceptWikiSparql = new SuggestionAction(this, "ConceptWiki", new ConceptWikiSparqlPppPlugin(gdbManager));
-		openPhactsSparql = new SuggestionAction(this, "Find compound by Gene", new OpenPhactsPppPlugin(gdbManager));
-		stitchSparql = new SuggestionAction(this, "Find suggestions", new StitchSparqlPppPlugin(gdbManager));
-		localInteractionGpml = new SuggestionAction(this, "Local Gpml Interaction", new LocalInteractionGpmlPppPlugin(gdbManager));
-		openPhactsCompoundPharmaAPI = new SuggestionAction(this, "Get Targets of Compound", new OpenPhactsApiPlugin(gdbManager));
+		cache = SuggestionCache.fromPreferences();
+		sources.putAll(new SuggestionRegistry(gdbManager, cache).getSources());
+		hmdbPppAction = action("HMDB");
+		keggGeneByEnzyme = action("Kegg (Gene by enzyme)");
+		keggEnzymeByGene = action("Kegg (Enzyme by gene)");
+		keggEnzymeByCompound = action("Kegg (Enzyme by compound)");
+		localPppAction = action("WikiPathways (local)");
+		pathwayCommonsAll = action("All");
+		pathwayCommonsBiogrid = action("BIOGRID");
+		pathwayCommonsCell_Map = action("CELL_MAP");
+		pathwayCommonsHprd = action("HPRD");
+		pathwayCommonsHumancyc = action("HUMAN_CYC");
+		pathwayCommonsIntact = action("INTACT");
+		pathwayCommonsMint = action("MINT");
+		pathwayCommonsNci_Nature = action("NCI_NATURE");
+		pathwayCommonsReactome = action("REACTOME");
+		bindPppAction = action("Bind");
+		whatizitPppAction = action("Whatizit");
+		wikiPathwaysAction = action("WikiPathways");
+		conceptWikiSparql = action("ConceptWiki");
+		openPhactsSparql = action("Find compound by Gene");
+		stitchSparql = action("Find suggestions");
+		localInteractionGpml = action("Local Gpml Interaction");
+		openPhactsCompoundPharmaAPI = action("Get Targets of Compound");
+
+		executor = SuggestionExecutors.create(FAN_OUT_THREADS);
+		allSourcesAction = new SuggestionAction(this, "All sources",
+				new FanOutSuggestion(sources, executor, FAN_OUT_TIMEOUT));
+		for (Map.Entry<String, Suggestion> source : sources.entrySet())
+		{
+			batchActions.add (new BatchAction(source.getKey(), source.getValue()));
+		}
 	}
 
-	public void done() {}
+	/**
+	 * Create the menu action for one of the registered sources.
+	 */
+	private SuggestionAction action(String name)
+	{
+		return new SuggestionAction(this, name, sources.get(name));
+	}
+
+	public void done()
+	{
+		if (executor != null) executor.shutdownNow();
+	}
 
 	/**
 	 * Action to be added to right-click menu.
@@ -215,18 +256,55 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 			final PppPane pane = parent.getPane();
 			//pane.removeAll();
 			//pane.validate();
-			final ProgressKeeper pk = new ProgressKeeper();
+			// cancel in the dialog also stops the query itself
+			final CancellingProgressKeeper pk = new CancellingProgressKeeper();
 			final ProgressDialog pd = new ProgressDialog(desktop.getFrame(), "Querying " +  name, pk, true, true);
 			pk.setTaskName("Running query");
 
-			SwingWorker<Pathway, Void> worker = new SwingWorker<Pathway, Void>()
+			final PathwayElement input = elt.getPathwayElement();
+
+			// spokes of a StreamingSuggestion are shown while it runs
+			SwingWorker<Pathway, PathwayElement> worker = new SwingWorker<Pathway, PathwayElement>()
 			{
+				private final List<PathwayElement> partial = new ArrayList<PathwayElement>();
 
 				@Override
 				protected Pathway doInBackground() throws Exception 
 				{
-					Pathway result = suggestion.doSuggestion(elt.getPathwayElement());
-					return result;
+					CancellationToken previous = CancellationToken.enter(pk.getToken());
+					try
+					{
+						// within the concurrency limit of the source, shared with fan-out and server requests
+						return SuggestionExecutors.call(name, new Callable<Pathway>()
+						{
+							public Pathway call() throws SuggestionException
+							{
+								if (suggestion instanceof StreamingSuggestion)
+								{
+									return ((StreamingSuggestion)suggestion).doSuggestion(input, new StreamingSuggestion.SpokeSink()
+									{
+										public void spoke(PathwayElement spoke)
+										{
+											publish (spoke);
+										}
+									});
+								}
+								return suggestion.doSuggestion(input);
+							}
+						});
+					}
+					finally
+					{
+						CancellationToken.exit(previous);
+					}
+				}
+
+				@Override
+				protected void process(List<PathwayElement> spokes)
+				{
+					if (pk.isCancelled() || isDone()) return;
+					partial.addAll (spokes);
+					pane.showPartial("Putative pathway part: " + name, input, partial);
 				}
 
 				@Override
@@ -258,11 +336,137 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 					pk.finished();
 				}
 			};
-			worker.execute();
+			execute(worker);
 			pd.setVisible(true);
 		}
 	}
 
+	/**
+	 * Action that runs a suggestion for several data nodes at once, and
+	 * shows the merged network as a single part.
+	 * The input is the current selection, or if at most one element
+	 * is selected, all data nodes of the pathway.
+	 */
+	private class BatchAction extends AbstractAction
+	{
+		private final String name;
+		private final Suggestion suggestion;
+		private List<PathwayElement> elements;
+
+		BatchAction(String name, Suggestion suggestion)
+		{
+			this.name = name;
+			this.suggestion = suggestion;
+			putValue(NAME, name);
+		}
+
+		/**
+		 * set the elements to query. Call this before adding to the menu.
+		 * Whether the suggestion can use any of them is only checked when
+		 * the action runs, off the event dispatch thread.
+		 */
+		void setElements (List<PathwayElement> someElements)
+		{
+			elements = someElements;
+		}
+
+		public void actionPerformed(ActionEvent e)
+		{
+			final List<PathwayElement> input = elements;
+			final CancellingProgressKeeper pk = new CancellingProgressKeeper();
+			final ProgressDialog pd = new ProgressDialog(desktop.getFrame(), "Querying " +  name, pk, true, true);
+			pk.setTaskName("Running batch query");
+
+			SwingWorker<Pathway, Void> worker = new SwingWorker<Pathway, Void>()
+			{
+				@Override
+				protected Pathway doInBackground() throws Exception
+				{
+					CancellationToken previous = CancellationToken.enter(pk.getToken());
+					try
+					{
+						// one request at a time, within the same limit as single suggestions of this source
+						return SuggestionExecutors.call(name, new Callable<Pathway>()
+						{
+							public Pathway call() throws SuggestionException
+							{
+								return SuggestionBatch.run(suggestion, input, pk);
+							}
+						});
+					}
+					finally
+					{
+						CancellationToken.exit(previous);
+					}
+				}
+
+				@Override
+				protected void done()
+				{
+					if (pk.isCancelled()) return; // don't add if user pressed cancel.
+					try
+					{
+						pane.addPart("Batch: " + name, get());
+					}
+					catch (InterruptedException e)
+					{
+						Logger.log.error("Operation interrupted", e);
+						JOptionPane.showMessageDialog(
+								pane, "Operation interrupted",
+								"Error", JOptionPane.ERROR_MESSAGE
+						);
+					}
+					catch (ExecutionException e)
+					{
+						Throwable cause = e.getCause();
+						Logger.log.error("Unable to get suggestions", cause);
+						JOptionPane.showMessageDialog(
+								pane, "Unable to get suggestions: " + cause.getMessage(),
+								"Error", JOptionPane.ERROR_MESSAGE
+						);
+					}
+					pk.finished();
+				}
+			};
+			execute(worker);
+			pd.setVisible(true);
+		}
+	}
+
+	/**
+	 * Run a worker on a virtual thread if possible,
+	 * otherwise on the SwingWorker thread pool.
+	 */
+	private static void execute(SwingWorker<?, ?> worker)
+	{
+		if (SuggestionExecutors.isVirtual())
+		{
+			SuggestionExecutors.getShared().execute(worker);
+		}
+		else
+		{
+			worker.execute();
+		}
+	}
+
+	/**
+	 * The selected elements, or if at most one element is selected,
+	 * all elements of the pathway.
+	 */
+	private static List<PathwayElement> getBatchElements(VPathwayElement e)
+	{
+		List<PathwayElement> result = new ArrayList<PathwayElement>();
+		for (Graphics g : e.getDrawing().getSelectedGraphics())
+		{
+			result.add (g.getPathwayElement());
+		}
+		if (result.size() <= 1)
+		{
+			result = new ArrayList<PathwayElement>(e.getDrawing().getPathwayModel().getDataObjects());
+		}
+		return result;
+	}
+
 	/**
 	 * callback, is called when user clicked with RMB on a pathway element.
 	 * @throws IOException 
@@ -283,6 +487,16 @@ public class PppPlugin implements Plugin, PathwayElementMenuHook
 			titleMenu.setFont(new Font("sansserif", Font.BOLD, 16));
 			titleMenu.setBackground(Color.white);
 			titleMenu.setForeground(Color.gray);
+			allSourcesAction.setElement((GeneProduct) e);
+			submenu.add(allSourcesAction);
+			JMenu batch = new JMenu("Batch (selection or pathway)");
+			List<PathwayElement> batchElements = getBatchElements(e);
+			for (BatchAction action : batchActions)
+			{
+				action.setElements(batchElements);
+				batch.add(action);
+			}
+			submenu.add(batch);
 			//JMenuItem interactionMenu = submenu.add("Find interaction suggestions");
 			//interactionMenu.setEnabled(false);
 			//interactionMenu.setBackground(Color.orange);
@@ -0,0 +1,117 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bridgedb.Xref;
+import org.pathvisio.plugins.LocalPathways.RelationshipIndexer.Relation;
+
+/**
+ * Immutable lookup from Xref to all relations it takes part in.
+ * <p>
+ * Each distinct Xref is given an int node id. The relations of node n are
+ * stored in compressed sparse row layout: they are the relation ids
+ * adjacency[offsets[n]] up to (not including) adjacency[offsets[n + 1]].
+ * This takes two ints per node plus one int per (node, relation) pair,
+ * and walking the relations of a node needs no boxing.
+ */
+class RelationGraph
+{
+	/** graph without any relations */
+	static final RelationGraph EMPTY = new RelationGraph(new ArrayList<Relation>());
+
+	private final Map<Xref, Integer> nodeIds;
+	private final Relation[] relations;
+	private final int[] offsets;
+	private final int[] adjacency;
+
+	/**
+	 * Build the graph. The relations are indexed by all Xrefs they refer to.
+	 * Participants without an Xref are not nodes of the graph.
+	 */
+	RelationGraph (Collection<Relation> all)
+	{
+		relations = all.toArray(new Relation[all.size()]);
+
+		// first pass: intern Xrefs and count the relations of each node
+		nodeIds = new HashMap<Xref, Integer>();
+		int[] degree = new int[16];
+		int pairs = 0;
+		for (Relation r : relations)
+		{
+			for (Xref ref : r.getRefs())
+			{
+				Integer id = nodeIds.get(ref);
+				if (id == null)
+				{
+					id = nodeIds.size();
+					nodeIds.put (ref, id);
+					if (id == degree.length)
+					{
+						int[] grown = new int[degree.length * 2];
+						System.arraycopy(degree, 0, grown, 0, degree.length);
+						degree = grown;
+					}
+				}
+				degree[id]++;
+				pairs++;
+			}
+		}
+
+		int nodeCount = nodeIds.size();
+		offsets = new int[nodeCount + 1];
+		for (int n = 0; n < nodeCount; ++n)
+		{
+			offsets[n + 1] = offsets[n] + degree[n];
+		}
+
+		// second pass: fill in the relation ids, reusing degree as write position
+		adjacency = new int[pairs];
+		System.arraycopy(offsets, 0, degree, 0, nodeCount);
+		for (int i = 0; i < relations.length; ++i)
+		{
+			for (Xref ref : relations[i].getRefs())
+			{
+				int node = nodeIds.get(ref);
+				adjacency[degree[node]++] = i;
+			}
+		}
+	}
+
+	/** @return the node id of ref, or -1 if it is not part of any relation */
+	int getNodeId (Xref ref)
+	{
+		Integer id = nodeIds.get(ref);
+		return id == null ? -1 : id;
+	}
+
+	/** number of relations node takes part in */
+	int getDegree (int node)
+	{
+		return offsets[node + 1] - offsets[node];
+	}
+
+	/** the i-th relation of node, 0 <= i < getDegree(node) */
+	Relation getRelation (int node, int i)
+	{
+		return relations[adjacency[offsets[node] + i]];
+	}
+}
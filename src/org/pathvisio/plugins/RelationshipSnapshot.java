@@ -0,0 +1,301 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.Xref;
+import org.pathvisio.plugins.LocalPathways.RelationshipIndexer.IndexedFile;
+import org.pathvisio.plugins.LocalPathways.RelationshipIndexer.Participant;
+import org.pathvisio.plugins.LocalPathways.RelationshipIndexer.Relation;
+
+/**
+ * Reads and writes a binary snapshot of a RelationshipIndexer.
+ * <p>
+ * The snapshot records, for each indexed GPML file, its path, modification
+ * time and size, and the participants of each relation found in it.
+ * All strings are stored once in a string table and referred to by index,
+ * which keeps the file compact. The file is read into memory in one go;
+ * it is not memory-mapped, because a mapping can't be released and would
+ * keep the file locked on Windows, so it could not be replaced.
+ * <p>
+ * Layout (all numbers big-endian):
+ * <pre>
+ * int magic, int version
+ * int stringCount, stringCount x (int byteLength, UTF-8 bytes), byteLength -1 means null
+ * int fileCount, fileCount x
+ *     int path, long lastModified, long length, int relationCount, relationCount x
+ *         3 x (int participantCount, participantCount x
+ *             int label, int dataNodeType, int systemCode, int fullName, int id)
+ * </pre>
+ * The three participant lists are lefts, mediators and rights.
+ * Participants without an Xref have a null id.
+ */
+class RelationshipSnapshot
+{
+	private static final int MAGIC = 0x50504958; // "PPIX"
+	private static final int VERSION = 2;
+
+	/**
+	 * Write a snapshot of the given files to dest.
+	 * The snapshot is written to a temporary file first, so
+	 * a failed write never leaves a corrupt snapshot behind.
+	 */
+	static void write(File dest, Map<File, IndexedFile> files) throws IOException
+	{
+		// first pass: collect all strings
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<File, IndexedFile> e : files.entrySet())
+		{
+			intern (strings, e.getKey().getAbsolutePath());
+			for (Relation r : e.getValue().relations)
+			{
+				internAll (strings, r.getLefts());
+				internAll (strings, r.getMediators());
+				internAll (strings, r.getRights());
+			}
+		}
+
+		File tmp = new File (dest.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(strings.size());
+			for (String s : strings.keySet())
+			{
+				if (s == null)
+				{
+					out.writeInt(-1);
+				}
+				else
+				{
+					byte[] bytes = s.getBytes("UTF-8");
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+
+			out.writeInt(files.size());
+			for (Map.Entry<File, IndexedFile> e : files.entrySet())
+			{
+				IndexedFile entry = e.getValue();
+				out.writeInt(strings.get(e.getKey().getAbsolutePath()));
+				out.writeLong(entry.lastModified);
+				out.writeLong(entry.length);
+				out.writeInt(entry.relations.size());
+				for (Relation r : entry.relations)
+				{
+					writeParticipants (out, strings, r.getLefts());
+					writeParticipants (out, strings, r.getMediators());
+					writeParticipants (out, strings, r.getRights());
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		if (dest.exists()) dest.delete();
+		if (!tmp.renameTo(dest))
+		{
+			tmp.delete();
+			throw new IOException("Could not replace " + dest);
+		}
+	}
+
+	/**
+	 * Read a snapshot written by write().
+	 * @return the indexed files, by absolute path, in the order they were written.
+	 * @throws IOException if the file can't be read or is not a valid snapshot
+	 */
+	static Map<File, IndexedFile> read(File src) throws IOException
+	{
+		FileInputStream in = new FileInputStream(src);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) throw new IOException(src + " is too large");
+			ByteBuffer buf = ByteBuffer.allocate((int)size);
+			while (buf.hasRemaining())
+			{
+				if (channel.read(buf) < 0) throw new IOException(src + " is truncated");
+			}
+			buf.flip();
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+			{
+				throw new IOException(src + " is not a relationship index snapshot of a supported version");
+			}
+
+			String[] strings = new String[readCount(buf, 4)];
+			for (int i = 0; i < strings.length; ++i)
+			{
+				int len = buf.getInt();
+				if (len == -1) continue;
+				if (len < 0 || len > buf.remaining()) throw new IOException(src + " is corrupt: invalid string length " + len);
+				byte[] bytes = new byte[len];
+				buf.get(bytes);
+				strings[i] = new String(bytes, "UTF-8");
+			}
+
+			Map<File, IndexedFile> result = new LinkedHashMap<File, IndexedFile>();
+			int fileCount = readCount(buf, 24);
+			for (int i = 0; i < fileCount; ++i)
+			{
+				String path = readString(buf, strings);
+				if (path == null) throw new IOException(src + " is corrupt: file without path");
+				File f = new File(path);
+				long lastModified = buf.getLong();
+				long length = buf.getLong();
+				int relationCount = readCount(buf, 12);
+				List<Relation> relations = new ArrayList<Relation>(relationCount);
+				for (int j = 0; j < relationCount; ++j)
+				{
+					Relation r = new Relation();
+					readParticipants (buf, strings, r, Participant.Role.LEFT);
+					readParticipants (buf, strings, r, Participant.Role.MEDIATOR);
+					readParticipants (buf, strings, r, Participant.Role.RIGHT);
+					relations.add (r);
+				}
+				result.put (f, new IndexedFile(lastModified, length, relations));
+			}
+			return result;
+		}
+		catch (BufferUnderflowException ex)
+		{
+			throw new IOException(src + " is truncated");
+		}
+		catch (RuntimeException ex)
+		{
+			// anything else wrong with the data, so the caller can rebuild the index
+			throw new IOException(src + " is corrupt", ex);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private static void intern(Map<String, Integer> strings, String s)
+	{
+		if (!strings.containsKey(s))
+		{
+			strings.put (s, strings.size());
+		}
+	}
+
+	private static void internAll(Map<String, Integer> strings, Set<Participant> participants)
+	{
+		for (Participant p : participants)
+		{
+			Xref ref = p.getXref();
+			DataSource ds = ref == null ? null : ref.getDataSource();
+			intern (strings, p.getLabel());
+			intern (strings, p.getDataNodeType());
+			intern (strings, ds == null ? null : ds.getSystemCode());
+			intern (strings, ds == null ? null : ds.getFullName());
+			intern (strings, ref == null ? null : ref.getId());
+		}
+	}
+
+	private static void writeParticipants(DataOutputStream out, Map<String, Integer> strings, Set<Participant> participants) throws IOException
+	{
+		out.writeInt(participants.size());
+		for (Participant p : participants)
+		{
+			Xref ref = p.getXref();
+			DataSource ds = ref == null ? null : ref.getDataSource();
+			out.writeInt(strings.get(p.getLabel()));
+			out.writeInt(strings.get(p.getDataNodeType()));
+			out.writeInt(strings.get(ds == null ? null : ds.getSystemCode()));
+			out.writeInt(strings.get(ds == null ? null : ds.getFullName()));
+			out.writeInt(strings.get(ref == null ? null : ref.getId()));
+		}
+	}
+
+	/**
+	 * Read a count of entries of at least entrySize bytes each.
+	 * A count that is negative or doesn't fit in the rest of the file
+	 * is rejected, so a corrupt count can't exhaust the memory.
+	 */
+	private static int readCount(ByteBuffer buf, int entrySize) throws IOException
+	{
+		int count = buf.getInt();
+		if (count < 0 || count > buf.remaining() / entrySize)
+		{
+			throw new IOException("Corrupt relationship index snapshot: invalid count " + count);
+		}
+		return count;
+	}
+
+	/** read an index into the string table, and return that string */
+	private static String readString(ByteBuffer buf, String[] strings) throws IOException
+	{
+		int index = buf.getInt();
+		if (index < 0 || index >= strings.length)
+		{
+			throw new IOException("Corrupt relationship index snapshot: invalid string " + index);
+		}
+		return strings[index];
+	}
+
+	private static void readParticipants(ByteBuffer buf, String[] strings, Relation r, Participant.Role role) throws IOException
+	{
+		int count = readCount(buf, 20);
+		for (int i = 0; i < count; ++i)
+		{
+			String label = readString(buf, strings);
+			String dataNodeType = readString(buf, strings);
+			String systemCode = readString(buf, strings);
+			String fullName = readString(buf, strings);
+			String id = readString(buf, strings);
+
+			Xref ref = null;
+			if (id != null)
+			{
+				DataSource ds = null;
+				if (systemCode != null)
+				{
+					ds = DataSource.getBySystemCode(systemCode);
+				}
+				else if (fullName != null)
+				{
+					ds = DataSource.getByFullName(fullName);
+				}
+				ref = new Xref(id, ds);
+			}
+			r.addParticipant(new Participant(ref, label, dataNodeType, role));
+		}
+	}
+}
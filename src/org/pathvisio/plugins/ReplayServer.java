@@ -0,0 +1,323 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+import org.pathvisio.core.debug.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Records the traffic of the providers, and plays it back offline,
+ * so their performance can be measured reproducibly.
+ * <p>
+ * The server runs in-process on the loopback interface. Requests reach it
+ * through HttpTransport.rewrite, which turns scheme://host/path into
+ * {base}/scheme/host/path. That covers the plain HTTP providers,
+ * the KEGG and BIND SOAP calls and the SPARQL endpoints.
+ * <p>
+ * When recording, every request is sent on to its real address and the
+ * exchange is stored in an HttpArchive. When replaying, exchanges come from
+ * the archive only, after the delay and at the bandwidth of a Profile;
+ * a request that was not recorded gets a 404. Cookies are not recorded,
+ * which doesn't matter for any of the current providers.
+ */
+public class ReplayServer
+{
+	public enum Mode { RECORD, REPLAY };
+
+	/** Simulated network conditions for replayed responses */
+	public static class Profile
+	{
+		/** no delay, no bandwidth limit: measures the providers themselves */
+		public static final Profile NONE = new Profile(0, 0, 0);
+		public static final Profile LAN = new Profile(1, 1, 12500000);
+		public static final Profile BROADBAND = new Profile(30, 10, 2500000);
+		public static final Profile MOBILE = new Profile(150, 50, 250000);
+
+		/** delay before the response, in milliseconds */
+		final long latency;
+		/** maximum random extra delay, in milliseconds */
+		final long jitter;
+		/** response bytes per second, 0 for no limit */
+		final long bytesPerSecond;
+
+		public Profile (long latency, long jitter, long bytesPerSecond)
+		{
+			this.latency = latency;
+			this.jitter = jitter;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+		/**
+		 * Parse a profile: none, lan, broadband, mobile,
+		 * or latency:jitter:bytesPerSecond, e.g. 100:20:500000.
+		 * @throws IllegalArgumentException if value is neither
+		 */
+		public static Profile parse (String value)
+		{
+			if ("none".equals(value)) return NONE;
+			if ("lan".equals(value)) return LAN;
+			if ("broadband".equals(value)) return BROADBAND;
+			if ("mobile".equals(value)) return MOBILE;
+			String[] fields = value.split(":");
+			try
+			{
+				if (fields.length == 3)
+				{
+					Profile p = new Profile(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+					if (p.latency >= 0 && p.jitter >= 0 && p.bytesPerSecond >= 0) return p;
+				}
+			}
+			catch (NumberFormatException ex)
+			{
+				// fall through
+			}
+			throw new IllegalArgumentException("Unknown profile " + value + ", use none, lan, broadband, mobile or latency:jitter:bytesPerSecond");
+		}
+	}
+
+	private static final String PREFIX = "/replay/";
+	/** threads for requests, if there are no virtual threads; most of them sleep */
+	private static final int DEFAULT_THREADS = 64;
+
+	private final HttpArchive archive;
+	private final Mode mode;
+	private final Profile profile;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	/** fixed seed, so runs get the same sequence of delays */
+	private final Random random = new Random(0);
+
+	/**
+	 * Create a server for archive. Call start to begin serving.
+	 * @param address use port 0 to pick a free port
+	 * @param threads number of requests handled at the same time, if there are no virtual threads
+	 */
+	public ReplayServer (HttpArchive archive, Mode mode, Profile profile, InetSocketAddress address, int threads) throws IOException
+	{
+		this.archive = archive;
+		this.mode = mode;
+		this.profile = profile;
+		server = HttpServer.create(address, 0);
+		server.createContext(PREFIX, new ReplayHandler());
+		executor = SuggestionExecutors.create(threads);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Start a server on a free port of the loopback interface,
+	 * and send all provider traffic through it.
+	 */
+	public static ReplayServer startForProviders (File dir, Mode mode, Profile profile) throws IOException
+	{
+		ReplayServer server = new ReplayServer(new HttpArchive(dir), mode, profile,
+				new InetSocketAddress("127.0.0.1", 0), DEFAULT_THREADS);
+		server.start();
+		HttpTransport.setReplayBase (server.getBaseUrl());
+		return server;
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	/** stop serving; provider traffic goes to the real addresses again */
+	public void stop()
+	{
+		if (getBaseUrl().equals(HttpTransport.getReplayBase())) HttpTransport.setReplayBase (null);
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	public String getBaseUrl()
+	{
+		InetSocketAddress address = server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort() + PREFIX.substring(0, PREFIX.length() - 1);
+	}
+
+	/** url as a path on the server at base */
+	static String toProxyUrl (String base, String url)
+	{
+		int colon = url.indexOf("://");
+		if (colon < 0) return url;
+		return base + "/" + url.substring(0, colon) + "/" + url.substring(colon + 3);
+	}
+
+	/** the original URL of a path on the server, without the prefix, or null if it isn't one */
+	static String fromProxyPath (String path)
+	{
+		int slash = path.indexOf('/');
+		if (slash <= 0) return null;
+		return path.substring(0, slash) + "://" + path.substring(slash + 1);
+	}
+
+	private class ReplayHandler implements HttpHandler
+	{
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			try
+			{
+				String path = exchange.getRequestURI().getRawPath().substring(PREFIX.length());
+				String query = exchange.getRequestURI().getRawQuery();
+				String url = fromProxyPath(query == null ? path : path + "?" + query);
+				if (url == null)
+				{
+					sendText (exchange, 400, "Not a proxied URL");
+					return;
+				}
+				String method = exchange.getRequestMethod();
+				byte[] body = readAll(exchange.getRequestBody());
+				if (body.length == 0) body = null;
+
+				HttpArchive.Exchange result;
+				if (mode == Mode.RECORD)
+				{
+					result = forward(exchange, method, url, body);
+					archive.put (result);
+				}
+				else
+				{
+					result = archive.get(method, url, body);
+					if (result == null)
+					{
+						Logger.log.warn ("Not recorded: " + method + " " + url);
+						sendText (exchange, 404, "Not recorded: " + method + " " + url);
+						return;
+					}
+					Thread.sleep (getDelay());
+				}
+				send (exchange, result, mode == Mode.REPLAY);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+			}
+			catch (IOException ex)
+			{
+				Logger.log.warn ("Replay request failed", ex);
+				sendText (exchange, 502, "" + ex.getMessage());
+			}
+		}
+	}
+
+	private synchronized long getDelay()
+	{
+		long jitter = profile.jitter > 0 ? (long)(random.nextDouble() * profile.jitter) : 0;
+		return profile.latency + jitter;
+	}
+
+	/** send a request on to its real address, and return the exchange */
+	private static HttpArchive.Exchange forward (HttpExchange exchange, String method, String url, byte[] body) throws IOException
+	{
+		HttpURLConnection conn = (HttpURLConnection)new URL(url).openConnection();
+		conn.setConnectTimeout(HttpTransport.CONNECT_TIMEOUT);
+		conn.setReadTimeout(HttpTransport.READ_TIMEOUT);
+		conn.setRequestMethod(method);
+		// the headers that select what is returned, SOAPAction for the SOAP services
+		for (String header : new String[] { "Content-Type", "Accept", "SOAPAction" })
+		{
+			String value = exchange.getRequestHeaders().getFirst(header);
+			if (value != null) conn.setRequestProperty(header, value);
+		}
+		if (body != null)
+		{
+			conn.setDoOutput(true);
+			conn.setFixedLengthStreamingMode(body.length);
+			OutputStream out = conn.getOutputStream();
+			try
+			{
+				out.write (body);
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		int status = conn.getResponseCode();
+		InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+		byte[] response = in == null ? new byte[0] : readAll(in);
+		return new HttpArchive.Exchange(method, url, body, status, conn.getContentType(), response);
+	}
+
+	/**
+	 * Send a recorded response.
+	 * @param throttle if true, no faster than the bandwidth of the profile
+	 */
+	private void send (HttpExchange exchange, HttpArchive.Exchange result, boolean throttle) throws IOException, InterruptedException
+	{
+		if (result.contentType != null) exchange.getResponseHeaders().set("Content-Type", result.contentType);
+		byte[] body = result.responseBody;
+		exchange.sendResponseHeaders(result.status, body.length == 0 ? -1 : body.length);
+		OutputStream out = exchange.getResponseBody();
+		try
+		{
+			long start = System.currentTimeMillis();
+			for (int off = 0; off < body.length; off += HttpTransport.BUFFER_SIZE)
+			{
+				int n = Math.min(HttpTransport.BUFFER_SIZE, body.length - off);
+				if (throttle && profile.bytesPerSecond > 0)
+				{
+					long wait = start + (off + n) * 1000L / profile.bytesPerSecond - System.currentTimeMillis();
+					if (wait > 0) Thread.sleep (wait);
+				}
+				out.write (body, off, n);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void sendText (HttpExchange exchange, int status, String message) throws IOException
+	{
+		SuggestionServer.send (exchange, status, "text/plain", message.getBytes("UTF-8"));
+	}
+
+	private static byte[] readAll (InputStream in) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+			{
+				result.write (buffer, 0, n);
+			}
+			return result.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
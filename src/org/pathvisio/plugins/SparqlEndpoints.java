@@ -0,0 +1,84 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import org.pathvisio.core.preferences.Preference;
+import org.pathvisio.core.preferences.PreferenceManager;
+
+/**
+ * The SPARQL endpoints used by the providers.
+ * <p>
+ * Each endpoint is a preference, so it can be pointed elsewhere, e.g. at a
+ * mirror. For offline runs, setLocalBase sends every query to one server
+ * instead, usually a LocalSparqlEndpoint, with the dataset name of the
+ * endpoint appended to the URL. That setting is not saved.
+ */
+public class SparqlEndpoints
+{
+	/** The endpoints, with their dataset name and live URL */
+	enum Endpoint implements Preference
+	{
+		PPP_SPARQL_STITCH ("stitch", "http://www4.wiwiss.fu-berlin.de/stitch/sparql"),
+		PPP_SPARQL_CONCEPTWIKI ("conceptwiki", "http://cwaapp1.liacs.nl:2020/sparql"),
+		PPP_SPARQL_CHEM2BIO2RDF ("chem2bio2rdf", "http://192.168.10.231:8183/sparql"),
+		PPP_SPARQL_CHEMOGENOMICS ("chemogenomics", "http://utopia2.cs.man.ac.uk:8183/sparql"),
+		PPP_SPARQL_UNIPROT ("uniprot", "http://beta.sparql.uniprot.org");
+
+		Endpoint (String dataset, String defaultValue)
+		{
+			this.dataset = dataset;
+			this.defaultValue = defaultValue;
+		}
+
+		private final String dataset;
+		private String defaultValue;
+
+		/** short name, used for the fixture file and by setLocalBase */
+		public String getDataset() {
+			return dataset;
+		}
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		public void setDefault(String defValue) {
+			defaultValue = defValue;
+		}
+	};
+
+	private static volatile String localBase = null;
+
+	private SparqlEndpoints() {}
+
+	/** the URL to send queries for endpoint to, through the ReplayServer if there is one */
+	public static String get (Endpoint endpoint)
+	{
+		String base = localBase;
+		if (base != null) return base + "/" + endpoint.getDataset();
+		return HttpTransport.rewrite(PreferenceManager.getCurrent().get(endpoint));
+	}
+
+	/**
+	 * Send the queries of all endpoints to base/{dataset} instead,
+	 * or to the configured endpoints again if base is null.
+	 */
+	public static void setLocalBase (String base)
+	{
+		localBase = base;
+	}
+}
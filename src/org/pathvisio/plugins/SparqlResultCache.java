@@ -0,0 +1,184 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.pathvisio.core.preferences.Preference;
+import org.pathvisio.core.preferences.PreferenceManager;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.engine.http.QueryEngineHTTP;
+
+/**
+ * Results of remote SPARQL queries, by endpoint and query text.
+ * <p>
+ * Entries expire after PPP_SPARQL_CACHE_TTL milliseconds, and at most
+ * PPP_SPARQL_CACHE_SIZE entries are kept, least recently used first out.
+ * Queries are sent as text, without being parsed on this side; use
+ * SparqlTemplate to build them.
+ */
+public class SparqlResultCache
+{
+	/** Preferences for the SPARQL result cache */
+	enum SparqlCachePrefs implements Preference
+	{
+		/** maximum number of query results kept */
+		PPP_SPARQL_CACHE_SIZE ("1000"),
+		/** maximum age of a query result in milliseconds */
+		PPP_SPARQL_CACHE_TTL ("3600000");
+
+		SparqlCachePrefs (String defaultValue)
+		{
+			this.defaultValue = defaultValue;
+		}
+
+		private String defaultValue;
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		public void setDefault(String defValue) {
+			defaultValue = defValue;
+		}
+	};
+
+	private static class Entry
+	{
+		final List<QuerySolution> solutions;
+		final long created;
+
+		Entry (List<QuerySolution> solutions, long created)
+		{
+			this.solutions = solutions;
+			this.created = created;
+		}
+	}
+
+	private static SparqlResultCache shared = null;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final int maxSize;
+	private final long ttl;
+
+	/**
+	 * @param maxSize maximum number of results kept
+	 * @param ttl maximum age of a result in milliseconds
+	 */
+	public SparqlResultCache (int maxSize, long ttl)
+	{
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+	}
+
+	/** cache shared by all providers, configured from the PathVisio preferences */
+	public static synchronized SparqlResultCache getShared()
+	{
+		if (shared == null)
+		{
+			PreferenceManager prefs = PreferenceManager.getCurrent();
+			shared = new SparqlResultCache(
+					prefs.getInt(SparqlCachePrefs.PPP_SPARQL_CACHE_SIZE),
+					Long.parseLong(prefs.get(SparqlCachePrefs.PPP_SPARQL_CACHE_TTL)));
+		}
+		return shared;
+	}
+
+	/**
+	 * Run a SELECT query on endpoint, or take its result from the cache.
+	 * The query is aborted when the current CancellationToken is cancelled.
+	 * @return the solutions, which may not be modified
+	 * @throws IOException if the endpoint can't be reached or answers with an error
+	 */
+	public List<QuerySolution> select (String endpoint, String query) throws IOException
+	{
+		String key = endpoint + "\n" + query;
+		List<QuerySolution> result = get(key);
+		if (result != null) return result;
+
+		result = Collections.unmodifiableList(execute(endpoint, query));
+		synchronized (this)
+		{
+			entries.put (key, new Entry(result, System.currentTimeMillis()));
+			while (entries.size() > maxSize)
+			{
+				entries.remove (entries.keySet().iterator().next());
+			}
+		}
+		return result;
+	}
+
+	private synchronized List<QuerySolution> get (String key)
+	{
+		Entry e = entries.get(key);
+		if (e == null) return null;
+		if (System.currentTimeMillis() - e.created > ttl)
+		{
+			entries.remove (key);
+			return null;
+		}
+		return e.solutions;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+	}
+
+	private static List<QuerySolution> execute (String endpoint, String query) throws IOException
+	{
+		List<QuerySolution> result = new ArrayList<QuerySolution>();
+		CancellationToken token = CancellationToken.current();
+		QueryExecution queryExecution = new QueryEngineHTTP(endpoint, query);
+		CancellationToken.Registration abort = token.abortOnCancel(queryExecution);
+		try
+		{
+			ResultSet resultSet = queryExecution.execSelect();
+			while (resultSet.hasNext())
+			{
+				token.check();
+				result.add (resultSet.next());
+			}
+			return result;
+		}
+		catch (SuggestionException ex)
+		{
+			throw new InterruptedIOException("Cancelled: " + endpoint);
+		}
+		catch (RuntimeException ex)
+		{
+			// ARQ reports HTTP and parse errors unchecked
+			if (token.isCancelled()) throw new InterruptedIOException("Cancelled: " + endpoint);
+			throw new IOException("SPARQL query on " + endpoint + " failed: " + ex.getMessage(), ex);
+		}
+		finally
+		{
+			abort.remove();
+			queryExecution.close();
+		}
+	}
+}
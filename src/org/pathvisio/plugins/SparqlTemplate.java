@@ -0,0 +1,160 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+
+/**
+ * A SPARQL query that is parsed once, with parameters that are filled in
+ * per call.
+ * <p>
+ * Parameters are written as $name in the template, which ARQ parses as an
+ * ordinary variable, so a broken template fails when it is created instead
+ * of on every call. Values are RDF terms, see literal and uri, and are
+ * written in proper SPARQL syntax: a label containing a quote can't change
+ * the query. Don't use $ in string literals or IRIs of a template.
+ * <p>
+ * Remote queries go through SparqlResultCache, so a repeated
+ * query is neither parsed nor sent again while its result is fresh.
+ */
+public class SparqlTemplate
+{
+	private static final Pattern PARAMETER = Pattern.compile("\\$(\\w+)");
+	/** characters that are not allowed in an IRI in SPARQL syntax */
+	private static final Pattern BAD_IRI = Pattern.compile("[\\x00-\\x20<>\"{}|^`\\\\]");
+
+	/** the template, split around the parameters */
+	private final List<String> parts = new ArrayList<String>();
+	/** parameter names, one less than parts */
+	private final List<String> names = new ArrayList<String>();
+	/** the parsed template, for queries without parameters */
+	private final Query query;
+
+	/**
+	 * @throws com.hp.hpl.jena.query.QueryParseException if template isn't valid SPARQL
+	 */
+	public SparqlTemplate (String template)
+	{
+		query = QueryFactory.create(template);
+		Matcher m = PARAMETER.matcher(template);
+		int start = 0;
+		while (m.find())
+		{
+			parts.add (template.substring(start, m.start()));
+			names.add (m.group(1));
+			start = m.end();
+		}
+		parts.add (template.substring(start));
+	}
+
+	/** a literal value for a parameter */
+	public static Node literal (String value)
+	{
+		return Node.createLiteral(value);
+	}
+
+	/**
+	 * An IRI value for a parameter.
+	 * @throws IllegalArgumentException if iri contains characters that are not allowed in an IRI
+	 */
+	public static Node uri (String iri)
+	{
+		if (BAD_IRI.matcher(iri).find()) throw new IllegalArgumentException("Not a valid IRI: " + iri);
+		return Node.createURI(iri);
+	}
+
+	/** a value in SPARQL syntax */
+	public static String format (Node value)
+	{
+		return FmtUtils.stringForNode(value);
+	}
+
+	/** the query text with its only parameter, name, set to value */
+	public String bind (String name, Node value)
+	{
+		return bind (Collections.singletonMap(name, value));
+	}
+
+	/**
+	 * The query text with all parameters set.
+	 * @throws IllegalArgumentException if a parameter has no value
+	 */
+	public String bind (Map<String, Node> values)
+	{
+		Map<String, String> formatted = new HashMap<String, String>();
+		StringBuilder result = new StringBuilder(parts.get(0));
+		for (int i = 0; i < names.size(); ++i)
+		{
+			String name = names.get(i);
+			String value = formatted.get(name);
+			if (value == null)
+			{
+				if (!values.containsKey(name)) throw new IllegalArgumentException("No value for $" + name);
+				value = format(values.get(name));
+				formatted.put (name, value);
+			}
+			result.append (value).append (parts.get(i + 1));
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Run the query without parameters on a local model.
+	 * The parsed query is reused, it isn't parsed again.
+	 */
+	public ResultSet select (Model model)
+	{
+		if (!names.isEmpty()) throw new IllegalStateException("Query has parameters: " + names);
+		QueryExecution queryExecution = QueryExecutionFactory.create(query, model);
+		return queryExecution.execSelect();
+	}
+
+	/**
+	 * Run the query with its only parameter set on a SPARQL endpoint,
+	 * or take the result from the shared SparqlResultCache.
+	 */
+	public List<QuerySolution> select (String endpoint, String name, Node value) throws IOException
+	{
+		return SparqlResultCache.getShared().select(endpoint, bind(name, value));
+	}
+
+	/**
+	 * Run the query with all parameters set on a SPARQL endpoint,
+	 * or take the result from the shared SparqlResultCache.
+	 */
+	public List<QuerySolution> select (String endpoint, Map<String, Node> values) throws IOException
+	{
+		return SparqlResultCache.getShared().select(endpoint, bind(values));
+	}
+}
@@ -34,12 +34,7 @@ import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.RDFNode;
 
 /**
@@ -48,6 +43,14 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
  */
 public class StitchSparqlPppPlugin extends SuggestionAdapter 
 {
+	/** interaction partners of the compound with label $label */
+	private static final SparqlTemplate QUERY = new SparqlTemplate(
+			"PREFIX stitch: <http://www4.wiwiss.fu-berlin.de/stitch/resource/stitch/>" +
+			"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>"+	
+			"SELECT DISTINCT ?o ?oLabel WHERE {?s stitch:interactsWith ?o ." +
+			"?s rdfs:label $label ." +
+			" ?o rdfs:label ?oLabel}");
+
 	private GdbManager gdbManager;
 
 	public StitchSparqlPppPlugin (GdbManager gdbManager)
@@ -67,17 +70,16 @@ public class StitchSparqlPppPlugin extends SuggestionAdapter
 
 		List<PathwayElement> spokes = new ArrayList<PathwayElement>();		
 		
-		String sparqlQueryString = "PREFIX stitch: <http://www4.wiwiss.fu-berlin.de/stitch/resource/stitch/>" +
-			"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>"+	
-			"SELECT DISTINCT ?o ?oLabel WHERE {?s stitch:interactsWith ?o ." +
-			"?s rdfs:label \""+input.getTextLabel()+"\" ." +
-					" ?o rdfs:label ?oLabel}";
+		List<QuerySolution> solutions;
+		try
+		{
+			solutions = QUERY.select(SparqlEndpoints.get(SparqlEndpoints.Endpoint.PPP_SPARQL_STITCH), "label", SparqlTemplate.literal(input.getTextLabel()));
+		}
+		catch (IOException ex)
+		{
+			throw new SuggestionException(ex);
+		}
 
-		
-		System.out.println(sparqlQueryString);
-		Query query = QueryFactory.create(sparqlQueryString);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService("http://www4.wiwiss.fu-berlin.de/stitch/sparql", query);
-		ResultSet resultSet = queryExecution.execSelect();
 		PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 		pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 		pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
@@ -87,8 +89,7 @@ public class StitchSparqlPppPlugin extends SuggestionAdapter
 		pelt.setCopyright("OPENDATA");
 		pelt.setDataNodeType(input.getDataNodeType());
 
-		while (resultSet.hasNext()) {
-			QuerySolution solution = resultSet.next();
+		for (QuerySolution solution : solutions) {
 			RDFNode compoundLabel = solution.get("oLabel");
 			RDFNode compoundId = solution.get("o");
 			PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
@@ -0,0 +1,44 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+
+/**
+ * A Suggestion that reports spokes while it is still running,
+ * so they can be shown before the slowest part of the query has finished.
+ */
+public interface StreamingSuggestion extends Suggestion
+{
+	/** Receives spokes as they are found */
+	public interface SpokeSink
+	{
+		/**
+		 * Called on the thread running the suggestion, once per spoke.
+		 * The spoke is a copy that the sink may keep and modify.
+		 */
+		public void spoke(PathwayElement spoke);
+	}
+
+	/**
+	 * Same as doSuggestion(input), but passes every spoke to sink as soon
+	 * as it is found. The returned result contains all spokes that were passed.
+	 * @param sink receives the spokes, may be null
+	 */
+	public Pathway doSuggestion(PathwayElement input, SpokeSink sink) throws SuggestionException;
+}
@@ -34,6 +34,13 @@ public interface Suggestion
 		}
 	}
 	
+	/**
+	 * Make a suggestion for input.
+	 * Implementations should stop as soon as possible when
+	 * CancellationToken.current() is cancelled or the thread is interrupted,
+	 * e.g. by checking the token between requests and between spokes.
+	 * Requests made through HttpTransport are aborted automatically.
+	 */
 	public Pathway doSuggestion(PathwayElement input) throws SuggestionException;
 	
 	public boolean canSuggest(PathwayElement input);
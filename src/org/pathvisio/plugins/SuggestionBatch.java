@@ -0,0 +1,184 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bridgedb.Xref;
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.model.ObjectType;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+import org.pathvisio.core.util.ProgressKeeper;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+/**
+ * Runs a Suggestion for many data nodes, e.g. a selection
+ * or a whole pathway, and merges the results into one network.
+ * <p>
+ * Data nodes with the same Xref (or without Xref, the same label) are
+ * queried only once. BatchSuggestions get all nodes in a single call,
+ * other suggestions are called once per node. In the merged network,
+ * every node appears once, with a line to each hub it was suggested for.
+ */
+public class SuggestionBatch
+{
+	private SuggestionBatch() {}
+
+	/**
+	 * Key that identifies the biological entity of a data node:
+	 * its Xref, or if it has no identifier, its label.
+	 */
+	static String getKey (PathwayElement elt)
+	{
+		Xref ref = elt.getXref();
+		if (ref != null && ref.getId() != null && !"".equals(ref.getId()))
+		{
+			return ref.toString();
+		}
+		return "label:" + ("" + elt.getTextLabel()).trim().toLowerCase();
+	}
+
+	/**
+	 * The data nodes among elements that suggestion can handle,
+	 * without duplicates, in their original order.
+	 */
+	public static List<PathwayElement> getInputs (Suggestion suggestion, Collection<PathwayElement> elements)
+	{
+		Map<String, PathwayElement> unique = new LinkedHashMap<String, PathwayElement>();
+		for (PathwayElement elt : elements)
+		{
+			if (elt.getObjectType() != ObjectType.DATANODE) continue;
+			String key = getKey(elt);
+			if (unique.containsKey(key)) continue;
+			if (!suggestion.canSuggest(elt)) continue;
+			unique.put (key, elt);
+		}
+		return new ArrayList<PathwayElement>(unique.values());
+	}
+
+	/**
+	 * Make suggestions for all data nodes among elements.
+	 * @param pk progress is reported here, may be null. If it is cancelled, no further nodes are queried.
+	 * @return the merged network, with one hub per node that gave a result.
+	 * @throws SuggestionException if there are no suitable nodes, or no node gave a result
+	 */
+	public static Pathway run (Suggestion suggestion, Collection<PathwayElement> elements, ProgressKeeper pk) throws SuggestionException
+	{
+		List<PathwayElement> inputs = getInputs(suggestion, elements);
+		if (inputs.isEmpty())
+		{
+			throw new SuggestionException("No suitable nodes: none of the elements can be used for this suggestion");
+		}
+		return merge (inputs, query(suggestion, inputs, pk));
+	}
+
+	/**
+	 * Query suggestion for each input. Failures of single inputs are logged and skipped.
+	 */
+	static Map<PathwayElement, Pathway> query (Suggestion suggestion, List<PathwayElement> inputs, ProgressKeeper pk) throws SuggestionException
+	{
+		if (suggestion instanceof BatchSuggestion)
+		{
+			if (pk != null) pk.report("Querying " + inputs.size() + " elements at once");
+			return ((BatchSuggestion)suggestion).doBatchSuggestion(inputs);
+		}
+
+		Map<PathwayElement, Pathway> results = new HashMap<PathwayElement, Pathway>();
+		SuggestionException lastError = null;
+		CancellationToken token = CancellationToken.current();
+		for (int i = 0; i < inputs.size(); ++i)
+		{
+			if (token.isCancelled()) break;
+			if (pk != null)
+			{
+				if (pk.isCancelled()) break;
+				pk.setProgress(100 * i / inputs.size());
+			}
+			PathwayElement input = inputs.get(i);
+			try
+			{
+				Pathway part = suggestion.doSuggestion(input);
+				if (part != null) results.put (input, part);
+			}
+			catch (SuggestionException ex)
+			{
+				lastError = ex;
+				Logger.log.warn ("No suggestion for " + input.getTextLabel(), ex);
+			}
+		}
+		if (results.isEmpty() && lastError != null) throw lastError;
+		return results;
+	}
+
+	/**
+	 * Merge the results into one network. Spokes that are the same
+	 * entity as another spoke or a hub become a single node.
+	 */
+	static Pathway merge (List<PathwayElement> inputs, Map<PathwayElement, Pathway> results) throws SuggestionException
+	{
+		Map<String, PathwayElement> nodes = new HashMap<String, PathwayElement>();
+		List<PathwayElement> hubs = new ArrayList<PathwayElement>();
+		Map<PathwayElement, List<PathwayElement>> spokesByHub = new IdentityHashMap<PathwayElement, List<PathwayElement>>();
+
+		for (PathwayElement input : inputs)
+		{
+			if (!results.containsKey(input)) continue;
+			PathwayElement hub = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+			hub.setMWidth (PppPlugin.DATANODE_MWIDTH);
+			hub.setMHeight (PppPlugin.DATANODE_MHEIGHT);
+			hub.setTextLabel(input.getTextLabel());
+			hub.setDataSource(input.getDataSource());
+			hub.setGeneID(input.getGeneID());
+			hub.setDataNodeType(input.getDataNodeType());
+			hubs.add (hub);
+			nodes.put (getKey(input), hub);
+		}
+		if (hubs.isEmpty())
+		{
+			throw new SuggestionException("No suggestions were found for any of the elements");
+		}
+
+		int i = 0;
+		for (PathwayElement input : inputs)
+		{
+			Pathway part = results.get(input);
+			if (part == null) continue;
+			PathwayElement hub = hubs.get(i++);
+			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
+			for (PathwayElement spoke : PathwayBuilder.getSpokes(part))
+			{
+				String key = getKey(spoke);
+				PathwayElement node = nodes.get(key);
+				if (node == null)
+				{
+					node = spoke;
+					nodes.put (key, node);
+				}
+				if (node != hub && !spokes.contains(node)) spokes.add (node);
+			}
+			spokesByHub.put (hub, spokes);
+		}
+		return PathwayBuilder.networkLayout(hubs, spokesByHub);
+	}
+}
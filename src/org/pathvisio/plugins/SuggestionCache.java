@@ -0,0 +1,249 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.model.ConverterException;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.preferences.GlobalPreference;
+import org.pathvisio.core.preferences.Preference;
+import org.pathvisio.core.preferences.PreferenceManager;
+
+/**
+ * Two-tier cache for suggestion results, shared by all CachingSuggestions.
+ * <p>
+ * The memory tier holds recently used results, least recently used first out.
+ * Its size is measured in pathway elements, so a few large results
+ * can't push out many small ones unnoticed.
+ * The disk tier stores results as GPML files in PPP_CACHE_DIR, one file
+ * per key, and survives restarts. The age of a disk entry is the
+ * modification time of its file.
+ * <p>
+ * Results are copied on the way in and on the way out, so callers
+ * may modify what they get.
+ */
+public class SuggestionCache
+{
+	/** Preferences for the suggestion cache */
+	enum CachePrefs implements Preference
+	{
+		PPP_CACHE_DIR (new File(GlobalPreference.getDataDir().toString(), "ppp-cache").toString()),
+		/** maximum total number of pathway elements kept in memory */
+		PPP_CACHE_MEMORY_SIZE ("20000"),
+		/** if true, never query remote sources, answer from the disk cache only */
+		PPP_CACHE_OFFLINE ("false");
+
+		CachePrefs (String defaultValue)
+		{
+			this.defaultValue = defaultValue;
+		}
+
+		private String defaultValue;
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		public void setDefault(String defValue) {
+			defaultValue = defValue;
+		}
+	};
+
+	private static class Entry
+	{
+		final Pathway pathway;
+		final long created;
+		final int size;
+
+		Entry (Pathway pathway, long created)
+		{
+			this.pathway = pathway;
+			this.created = created;
+			this.size = pathway.getDataObjects().size();
+		}
+	}
+
+	private final Map<String, Entry> memory = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final int maxMemorySize;
+	private int memorySize = 0;
+	private final File dir;
+
+	/**
+	 * @param dir directory for the disk tier, or null for a memory-only cache
+	 * @param maxMemorySize maximum total number of pathway elements in the memory tier
+	 */
+	public SuggestionCache (File dir, int maxMemorySize)
+	{
+		this.dir = dir;
+		this.maxMemorySize = maxMemorySize;
+	}
+
+	/**
+	 * Create a cache configured from the PathVisio preferences.
+	 */
+	public static SuggestionCache fromPreferences()
+	{
+		PreferenceManager prefs = PreferenceManager.getCurrent();
+		return new SuggestionCache(
+				prefs.getFile(CachePrefs.PPP_CACHE_DIR),
+				prefs.getInt(CachePrefs.PPP_CACHE_MEMORY_SIZE));
+	}
+
+	/** true if remote sources should not be queried */
+	public static boolean isOffline()
+	{
+		return PreferenceManager.getCurrent().getBoolean(CachePrefs.PPP_CACHE_OFFLINE);
+	}
+
+	/**
+	 * Look up a result.
+	 * @param maxAge maximum age in milliseconds, or a negative number to accept any age
+	 * @return a copy of the cached result, or null if there is none that is recent enough
+	 */
+	public Pathway get (String key, long maxAge)
+	{
+		long now = System.currentTimeMillis();
+		synchronized (this)
+		{
+			Entry e = memory.get(key);
+			if (e != null)
+			{
+				if (maxAge < 0 || now - e.created <= maxAge)
+				{
+					return e.pathway.clone();
+				}
+				remove (key);
+			}
+		}
+
+		File f = getFile(key);
+		if (f == null || !f.exists()) return null;
+		long created = f.lastModified();
+		if (maxAge >= 0 && now - created > maxAge) return null;
+		try
+		{
+			Pathway p = new Pathway();
+			p.readFromXml(f, false);
+			putMemory (key, new Entry(p, created));
+			return p.clone();
+		}
+		catch (ConverterException ex)
+		{
+			Logger.log.warn ("Ignoring unreadable cache entry " + f, ex);
+			f.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Store a result in both tiers.
+	 * A failure to write the disk tier is logged, not thrown:
+	 * the result itself is still valid.
+	 */
+	public void put (String key, Pathway pathway)
+	{
+		putMemory (key, new Entry(pathway.clone(), System.currentTimeMillis()));
+
+		File f = getFile(key);
+		if (f == null) return;
+		f.getParentFile().mkdirs();
+		File tmp = new File(f.getPath() + ".tmp");
+		try
+		{
+			pathway.writeToXml(tmp, false);
+			if (f.exists()) f.delete();
+			if (!tmp.renameTo(f)) tmp.delete();
+		}
+		catch (ConverterException ex)
+		{
+			tmp.delete();
+			Logger.log.warn ("Could not write cache entry " + f, ex);
+		}
+	}
+
+	/** remove all entries from both tiers */
+	public void clear()
+	{
+		synchronized (this)
+		{
+			memory.clear();
+			memorySize = 0;
+		}
+		if (dir == null) return;
+		File[] entries = dir.listFiles();
+		if (entries == null) return;
+		for (File f : entries)
+		{
+			if (f.getName().endsWith(".gpml")) f.delete();
+		}
+	}
+
+	private synchronized void putMemory (String key, Entry e)
+	{
+		remove (key);
+		if (e.size > maxMemorySize) return;
+		memory.put (key, e);
+		memorySize += e.size;
+		for (Iterator<Entry> it = memory.values().iterator(); memorySize > maxMemorySize && it.hasNext(); )
+		{
+			memorySize -= it.next().size;
+			it.remove();
+		}
+	}
+
+	private void remove (String key)
+	{
+		Entry old = memory.remove(key);
+		if (old != null) memorySize -= old.size;
+	}
+
+	/**
+	 * Keys can contain any character, so files are named
+	 * after a digest of the key.
+	 */
+	private File getFile (String key)
+	{
+		if (dir == null) return null;
+		try
+		{
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(key.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder();
+			for (byte b : digest)
+			{
+				name.append (Integer.toHexString((b & 0xff) | 0x100).substring(1));
+			}
+			return new File(dir, name + ".gpml");
+		}
+		catch (NoSuchAlgorithmException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		catch (UnsupportedEncodingException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+	}
+}
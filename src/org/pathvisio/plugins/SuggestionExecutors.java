@@ -0,0 +1,222 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.preferences.Preference;
+import org.pathvisio.core.preferences.PreferenceManager;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+/**
+ * Threads for running suggestions and their sub-requests.
+ * <p>
+ * Providers spend nearly all their time blocked on the network. On a Java
+ * runtime with virtual threads, every task gets its own virtual thread, so
+ * hundreds of concurrent blocking calls stay cheap. Otherwise a fixed pool
+ * of platform threads is used. The plug-in itself targets Java 6, like the
+ * rest of PathVisio: virtual threads are looked up by reflection, never
+ * compiled against, so they are an optional speed-up of newer runtimes.
+ * <p>
+ * Concurrency is limited per provider instead of per pool: a task created
+ * with task(provider, ...) first waits for one of the provider's
+ * PPP_MAX_PER_PROVIDER permits.
+ */
+public class SuggestionExecutors
+{
+	/** Preferences for suggestion threads */
+	enum ExecutorPrefs implements Preference
+	{
+		/** use virtual threads when the Java runtime has them */
+		PPP_VIRTUAL_THREADS ("true"),
+		/** maximum number of concurrent tasks per provider */
+		PPP_MAX_PER_PROVIDER ("8");
+
+		ExecutorPrefs (String defaultValue)
+		{
+			this.defaultValue = defaultValue;
+		}
+
+		private String defaultValue;
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		public void setDefault(String defValue) {
+			defaultValue = defValue;
+		}
+	};
+
+	/** size of the shared pool when there are no virtual threads */
+	private static final int SHARED_THREADS = 16;
+	/** how often to check for cancellation while waiting for a permit, in milliseconds */
+	private static final long CANCEL_POLL = 250;
+
+	private static final Method newVirtualExecutor = findVirtualExecutor();
+	private static final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+	private static ExecutorService shared = null;
+
+	private SuggestionExecutors() {}
+
+	private static Method findVirtualExecutor()
+	{
+		try
+		{
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			// fails on runtimes where virtual threads are a disabled preview feature
+			((ExecutorService)m.invoke(null)).shutdown();
+			return m;
+		}
+		catch (Exception ex)
+		{
+			return null;
+		}
+		catch (LinkageError ex)
+		{
+			return null;
+		}
+	}
+
+	/** true if new executors use virtual threads */
+	public static boolean isVirtual()
+	{
+		return newVirtualExecutor != null &&
+			PreferenceManager.getCurrent().getBoolean(ExecutorPrefs.PPP_VIRTUAL_THREADS);
+	}
+
+	/**
+	 * Create an executor with a thread per task if virtual threads are
+	 * available, otherwise with a fixed number of daemon threads.
+	 * @param platformThreads number of threads if there are no virtual threads
+	 */
+	public static ExecutorService create(int platformThreads)
+	{
+		if (isVirtual())
+		{
+			try
+			{
+				return (ExecutorService)newVirtualExecutor.invoke(null);
+			}
+			catch (Exception ex)
+			{
+				Logger.log.warn ("Can't create virtual threads, using a thread pool", ex);
+			}
+		}
+		return FanOutSuggestion.createExecutor(platformThreads);
+	}
+
+	/**
+	 * Executor for sub-requests of a suggestion, shared by all providers.
+	 * Never shut it down.
+	 */
+	public static synchronized ExecutorService getShared()
+	{
+		if (shared == null) shared = create(SHARED_THREADS);
+		return shared;
+	}
+
+	/**
+	 * Wrap a task so that it waits for a permit of provider before it runs,
+	 * and runs with the CancellationToken that is current now.
+	 * <p>
+	 * Sub-requests of a suggestion should use a different provider name
+	 * than the suggestion itself, otherwise a suggestion holding the last
+	 * permit could wait forever for its own sub-requests.
+	 */
+	public static <T> Callable<T> task(final String provider, final Callable<T> task)
+	{
+		final CancellationToken token = CancellationToken.current();
+		return new Callable<T>()
+		{
+			public T call() throws Exception
+			{
+				CancellationToken previous = CancellationToken.enter(token);
+				Semaphore slots = getPermits(provider);
+				try
+				{
+					while (!slots.tryAcquire(CANCEL_POLL, TimeUnit.MILLISECONDS))
+					{
+						token.check();
+					}
+					try
+					{
+						token.check();
+						return task.call();
+					}
+					finally
+					{
+						slots.release();
+					}
+				}
+				finally
+				{
+					CancellationToken.exit(previous);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Run task on the calling thread within the concurrency limit of provider.
+	 */
+	public static <T> T call(String provider, Callable<T> task) throws SuggestionException
+	{
+		try
+		{
+			return task(provider, task).call();
+		}
+		catch (SuggestionException ex)
+		{
+			throw ex;
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new SuggestionException(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			throw ex;
+		}
+		catch (Exception ex)
+		{
+			throw new SuggestionException(ex);
+		}
+	}
+
+	private static Semaphore getPermits(String provider)
+	{
+		Semaphore slots = permits.get(provider);
+		if (slots == null)
+		{
+			int max = PreferenceManager.getCurrent().getInt(ExecutorPrefs.PPP_MAX_PER_PROVIDER);
+			Semaphore created = new Semaphore(Math.max(1, max), true);
+			slots = permits.putIfAbsent(provider, created);
+			if (slots == null) slots = created;
+		}
+		return slots;
+	}
+}
@@ -0,0 +1,102 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.pathvisio.core.data.GdbManager;
+
+/**
+ * The suggestion sources of Pathway Loom, by display name.
+ * <p>
+ * Used by both the desktop plug-in and the headless PppBatchRunner,
+ * so both offer the same sources with the same caching.
+ * Nothing here depends on Swing or PvDesktop.
+ */
+public class SuggestionRegistry
+{
+	/** time to live of cached results from sources that rarely change */
+	static final long STABLE_SOURCE_TTL = 7 * CachingSuggestion.DEFAULT_TTL;
+
+	private final Map<String, Suggestion> sources = new LinkedHashMap<String, Suggestion>();
+	private final SuggestionCache cache;
+
+	/**
+	 * Create all sources.
+	 * @param gdbManager used to map identifiers, may be null in which case sources only accept their native identifiers
+	 * @param cache cache for remote results, or null to not cache at all
+	 */
+	public SuggestionRegistry (GdbManager gdbManager, SuggestionCache cache)
+	{
+		this.cache = cache;
+		register("HMDB", new HmdbPppPlugin(gdbManager));
+		register("Kegg (Gene by enzyme)", new KeggPppPlugin_getGenesByEnzymes(gdbManager), STABLE_SOURCE_TTL);
+		register("Kegg (Enzyme by gene)", new KeggPppPlugin_getEnzymesByGene(gdbManager), STABLE_SOURCE_TTL);
+		register("Kegg (Enzyme by compound)", new KeggPppPlugin_getEnzymesByCompound(gdbManager), STABLE_SOURCE_TTL);
+		register("WikiPathways (local)", new LocalPathways(), 0);
+		register("All", new PathwayCommonsPppPlugin(gdbManager, PathwayCommonsPppPlugin.SOURCE_ALL));
+		register("BIOGRID", new PathwayCommonsPppPlugin(gdbManager, "BIOGRID"));
+		register("CELL_MAP", new PathwayCommonsPppPlugin(gdbManager, "CELL_MAP"));
+		register("HPRD", new PathwayCommonsPppPlugin(gdbManager, "HPRD"));
+		register("HUMAN_CYC", new PathwayCommonsPppPlugin(gdbManager, "HUMANCYC"));
+		register("INTACT", new PathwayCommonsPppPlugin(gdbManager, "INTACT"));
+		register("MINT", new PathwayCommonsPppPlugin(gdbManager, "MINT"));
+		register("NCI_NATURE", new PathwayCommonsPppPlugin(gdbManager, "NCI_NATURE"));
+		register("REACTOME", new PathwayCommonsPppPlugin(gdbManager, "REACTOME"));
+		register("Bind", new BindPppPlugin(gdbManager));
+		register("Whatizit", new WhatizitPppPlugin(gdbManager));
+		register("WikiPathways", new WikiPathwaysPppPlugin(gdbManager));
+		register("ConceptWiki", new ConceptWikiSparqlPppPlugin(gdbManager));
+		register("Find compound by Gene", new OpenPhactsPppPlugin(gdbManager));
+		register("Find suggestions", new StitchSparqlPppPlugin(gdbManager));
+		register("Local Gpml Interaction", new LocalInteractionGpmlPppPlugin(gdbManager));
+		register("Get Targets of Compound", new OpenPhactsApiPlugin(gdbManager));
+	}
+
+	/**
+	 * Register a remote suggestion, with results cached for CachingSuggestion.DEFAULT_TTL.
+	 */
+	private void register(String name, Suggestion suggestion)
+	{
+		register(name, suggestion, CachingSuggestion.DEFAULT_TTL);
+	}
+
+	/**
+	 * @param ttl time to live of cached results in milliseconds, 0 to not cache at all
+	 */
+	private void register(String name, Suggestion suggestion, long ttl)
+	{
+		if (ttl > 0 && cache != null)
+		{
+			suggestion = CachingSuggestion.wrap(name, suggestion, cache, ttl);
+		}
+		sources.put (name, suggestion);
+	}
+
+	/** the source with the given display name, or null if there is none */
+	public Suggestion get(String name)
+	{
+		return sources.get(name);
+	}
+
+	/** all sources by display name, in menu order */
+	public Map<String, Suggestion> getSources()
+	{
+		return sources;
+	}
+}
@@ -0,0 +1,335 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.bridgedb.DataSource;
+import org.bridgedb.bio.BioDataSource;
+import org.pathvisio.core.data.GdbManager;
+import org.pathvisio.core.debug.Logger;
+import org.pathvisio.core.model.ConverterException;
+import org.pathvisio.core.model.GpmlFormat;
+import org.pathvisio.core.model.ObjectType;
+import org.pathvisio.core.model.Pathway;
+import org.pathvisio.core.model.PathwayElement;
+import org.pathvisio.core.preferences.PreferenceManager;
+import org.pathvisio.plugins.Suggestion.SuggestionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Small HTTP service that answers suggestion queries, so that several
+ * users and pipelines can share one process: one loaded local pathway
+ * index, one suggestion cache and one set of connections.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>GET /sources - the source names, as a JSON array
+ * <li>GET /suggest/{source}?ds={system code}&amp;id={identifier} - the suggestion for a data node.
+ * Optional parameters are label, type and format, which is json (default) or gpml.
+ * Use the source "All sources" to query all sources at once.
+ * </ul>
+ * The sources are the ones of SuggestionRegistry. Requests are handled on
+ * a bounded pool; the server listens on the loopback interface unless
+ * told otherwise.
+ */
+public class SuggestionServer
+{
+	/** source name that queries all sources at once, as in the plug-in menu */
+	static final String ALL_SOURCES = "All sources";
+	/** maximum time in milliseconds a single source may take for "All sources" */
+	private static final long FAN_OUT_TIMEOUT = 60000;
+
+	private static final int DEFAULT_PORT = 8183;
+	private static final int DEFAULT_THREADS = 8;
+
+	private final Map<String, Suggestion> sources = new HashMap<String, Suggestion>();
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ExecutorService requests;
+
+	/**
+	 * Create a server for the sources of registry. Call start to begin serving.
+	 * @param threads number of requests handled at the same time, if there are no virtual threads
+	 */
+	public SuggestionServer (SuggestionRegistry registry, InetSocketAddress address, int threads) throws IOException
+	{
+		sources.putAll (registry.getSources());
+		executor = SuggestionExecutors.create(threads);
+		sources.put (ALL_SOURCES, new FanOutSuggestion(registry.getSources(), executor, FAN_OUT_TIMEOUT));
+
+		server = HttpServer.create(address, 0);
+		server.createContext("/sources", new SourcesHandler());
+		server.createContext("/suggest/", new SuggestHandler());
+		// requests get their own pool, so a request waiting for the
+		// "All sources" fan out can never block the fan out itself
+		requests = SuggestionExecutors.create(threads);
+		server.setExecutor(requests);
+	}
+
+	public void start()
+	{
+		server.start();
+	}
+
+	/** stop accepting requests, and wait at most delay seconds for running requests */
+	public void stop(int delay)
+	{
+		server.stop(delay);
+		requests.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int port = DEFAULT_PORT;
+		int threads = DEFAULT_THREADS;
+		String bind = "127.0.0.1";
+		String gdb = null;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			if ("--port".equals(args[i])) port = Integer.parseInt(args[i + 1]);
+			else if ("--threads".equals(args[i])) threads = Integer.parseInt(args[i + 1]);
+			else if ("--bind".equals(args[i])) bind = args[i + 1];
+			else if ("--gdb".equals(args[i])) gdb = args[i + 1];
+			else
+			{
+				System.err.println ("Usage: SuggestionServer [--port N] [--bind ADDRESS] [--threads N] [--gdb FILE]");
+				System.exit (1);
+			}
+		}
+
+		PreferenceManager.init();
+		BioDataSource.init();
+		GdbManager gdbManager = null;
+		if (gdb != null)
+		{
+			try
+			{
+				gdbManager = new GdbManager();
+				gdbManager.setGeneDb(gdb);
+			}
+			catch (Exception ex)
+			{
+				System.err.println ("Can't open " + gdb + ": " + ex.getMessage());
+				System.exit (1);
+			}
+		}
+
+		SuggestionServer server = new SuggestionServer(
+				new SuggestionRegistry(gdbManager, SuggestionCache.fromPreferences()),
+				new InetSocketAddress(bind, port), threads);
+		server.start();
+		System.err.println ("Serving suggestions on http://" + bind + ":" + port + "/");
+	}
+
+	private class SourcesHandler implements HttpHandler
+	{
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			StringBuilder json = new StringBuilder("[");
+			for (Iterator<String> i = sources.keySet().iterator(); i.hasNext(); )
+			{
+				json.append (quote(i.next()));
+				if (i.hasNext()) json.append (",");
+			}
+			json.append ("]");
+			send (exchange, 200, "application/json", json.toString().getBytes("UTF-8"));
+		}
+	}
+
+	private class SuggestHandler implements HttpHandler
+	{
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			try
+			{
+				if (!"GET".equals(exchange.getRequestMethod()))
+				{
+					sendError (exchange, 405, "Only GET is supported");
+					return;
+				}
+				// the raw path, so that an encoded / in a source name is kept
+				String path = exchange.getRequestURI().getRawPath();
+				String name = URLDecoder.decode(path.substring("/suggest/".length()), "UTF-8");
+				Suggestion suggestion = sources.get(name);
+				if (suggestion == null)
+				{
+					sendError (exchange, 404, "Unknown source " + name);
+					return;
+				}
+
+				Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+				String id = params.get("id");
+				if (id == null || "".equals(id))
+				{
+					sendError (exchange, 400, "Parameter id is required");
+					return;
+				}
+				PathwayElement input = PathwayElement.createPathwayElement(ObjectType.DATANODE);
+				String ds = params.get("ds");
+				if (ds != null) input.setDataSource(DataSource.getBySystemCode(ds));
+				input.setGeneID(id);
+				input.setTextLabel(params.containsKey("label") ? params.get("label") : id);
+				if (params.containsKey("type")) input.setDataNodeType(params.get("type"));
+				if (!suggestion.canSuggest(input))
+				{
+					sendError (exchange, 400, name + " can't make suggestions for this data node");
+					return;
+				}
+
+				final Suggestion s = suggestion;
+				final PathwayElement in = input;
+				// within the concurrency limit of the source, shared with other requests
+				Pathway result = SuggestionExecutors.call(name, new Callable<Pathway>()
+				{
+					public Pathway call() throws SuggestionException
+					{
+						return s.doSuggestion(in);
+					}
+				});
+				if ("gpml".equals(params.get("format")))
+				{
+					ByteArrayOutputStream gpml = new ByteArrayOutputStream();
+					GpmlFormat.writeToXml(result, gpml, true);
+					send (exchange, 200, "application/xml", gpml.toByteArray());
+				}
+				else
+				{
+					send (exchange, 200, "application/json", toJson(name, input, result).getBytes("UTF-8"));
+				}
+			}
+			catch (SuggestionException ex)
+			{
+				Logger.log.warn ("Suggestion failed", ex);
+				sendError (exchange, 502, "" + ex.getMessage());
+			}
+			catch (ConverterException ex)
+			{
+				Logger.log.error ("Can't write result", ex);
+				sendError (exchange, 500, "" + ex.getMessage());
+			}
+			catch (RuntimeException ex)
+			{
+				Logger.log.error ("Request failed", ex);
+				sendError (exchange, 500, "" + ex);
+			}
+		}
+	}
+
+	static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException
+	{
+		Map<String, String> result = new HashMap<String, String>();
+		if (query == null) return result;
+		for (String pair : query.split("&"))
+		{
+			int eq = pair.indexOf('=');
+			if (eq < 0) continue;
+			result.put (URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+					URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+		}
+		return result;
+	}
+
+	/**
+	 * The result as JSON: the source, the input node and
+	 * the suggested nodes, each with ds, id, label and type.
+	 */
+	static String toJson(String source, PathwayElement input, Pathway result)
+	{
+		StringBuilder json = new StringBuilder();
+		json.append ("{\"source\":").append (quote(source));
+		json.append (",\"input\":");
+		appendNode (json, input);
+		json.append (",\"suggestions\":[");
+		boolean first = true;
+		for (PathwayElement spoke : PathwayBuilder.getSpokes(result))
+		{
+			if (!first) json.append (",");
+			first = false;
+			appendNode (json, spoke);
+		}
+		json.append ("]}");
+		return json.toString();
+	}
+
+	private static void appendNode(StringBuilder json, PathwayElement elt)
+	{
+		DataSource ds = elt.getDataSource();
+		json.append ("{\"ds\":").append (quote(ds == null ? null : ds.getSystemCode()));
+		json.append (",\"id\":").append (quote(elt.getGeneID()));
+		json.append (",\"label\":").append (quote(elt.getTextLabel()));
+		json.append (",\"type\":").append (quote(elt.getDataNodeType()));
+		json.append ("}");
+	}
+
+	/** value as a JSON string, or null */
+	static String quote(String value)
+	{
+		if (value == null) return "null";
+		StringBuilder result = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); ++i)
+		{
+			char c = value.charAt(i);
+			switch (c)
+			{
+			case '"': result.append ("\\\""); break;
+			case '\\': result.append ("\\\\"); break;
+			case '\n': result.append ("\\n"); break;
+			case '\r': result.append ("\\r"); break;
+			case '\t': result.append ("\\t"); break;
+			default:
+				if (c < 0x20) result.append (String.format("\\u%04x", (int)c));
+				else result.append (c);
+			}
+		}
+		return result.append ("\"").toString();
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException
+	{
+		send (exchange, status, "application/json", ("{\"error\":" + quote(message) + "}").getBytes("UTF-8"));
+	}
+
+	static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException
+	{
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		try
+		{
+			out.write (body);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}
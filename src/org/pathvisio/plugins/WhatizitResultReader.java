@@ -0,0 +1,183 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the UniProt mentions of informative sentences from
+ * the answer of the whatizitProteinInteraction pipeline, in a single pass.
+ * <p>
+ * A sentence is informative if a hitPairTable of the same
+ * MedlineCitation refers to it by sid. The mentions are the z:uniprot
+ * elements in the first text element of the abstract SENT with that sid.
+ * Because the hit tables and the abstract can come in any order,
+ * the mentions of each sentence are remembered until the end of its
+ * citation. Only one citation is held in memory at a time.
+ */
+class WhatizitResultReader
+{
+	/**
+	 * Read the response. The stream is not closed.
+	 * @return the trimmed UniProt mentions, each once, in document order
+	 */
+	static Set<String> read (InputStream in) throws XMLStreamException
+	{
+		Set<String> result = new LinkedHashSet<String>();
+		// the pipeline output uses prefixes such as z: without always declaring them
+		XMLStreamReader reader = XmlParsers.createLenientStreamReader(in);
+		try
+		{
+			// state of the current citation
+			Map<String, List<String>> mentions = new HashMap<String, List<String>>();
+			Set<String> informative = new HashSet<String>();
+
+			int depth = 0;
+			int hitTables = 0; // number of open hitPairTable elements
+			int abstracts = 0; // number of open AbstractText elements
+			String sentence = null; // sid of the open SENT
+			boolean sentenceText = false; // first text of the open SENT seen
+			int textDepth = -1; // depth of the first text of the open SENT, while open
+
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					depth++;
+					String name = getName(reader);
+					if ("MedlineCitation".equals(name))
+					{
+						mentions.clear();
+						informative.clear();
+					}
+					else if ("hitPairTable".equals(name))
+					{
+						hitTables++;
+					}
+					else if ("sent".equals(name) && hitTables > 0)
+					{
+						String sid = reader.getAttributeValue(null, "sid");
+						if (sid != null && !"".equals(sid)) informative.add (sid);
+					}
+					else if ("AbstractText".equals(name))
+					{
+						abstracts++;
+					}
+					else if ("SENT".equals(name) && abstracts > 0)
+					{
+						String sid = reader.getAttributeValue(null, "sid");
+						// only the first sentence with a given sid counts
+						if (sid != null && !mentions.containsKey(sid))
+						{
+							sentence = sid;
+							sentenceText = false;
+							mentions.put (sid, new ArrayList<String>());
+						}
+					}
+					else if ("text".equals(name) && sentence != null && !sentenceText)
+					{
+						sentenceText = true;
+						textDepth = depth;
+					}
+					else if ("z:uniprot".equals(name) && depth == textDepth + 1)
+					{
+						mentions.get(sentence).add (readText(reader).trim());
+						depth--;
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					String name = getName(reader);
+					if (depth == textDepth) textDepth = -1;
+					depth--;
+					if ("hitPairTable".equals(name))
+					{
+						hitTables--;
+					}
+					else if ("AbstractText".equals(name))
+					{
+						abstracts--;
+					}
+					else if ("SENT".equals(name))
+					{
+						sentence = null;
+					}
+					else if ("MedlineCitation".equals(name))
+					{
+						for (String sid : informative)
+						{
+							List<String> found = mentions.get(sid);
+							if (found != null) result.addAll (found);
+						}
+						mentions.clear();
+						informative.clear();
+					}
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return result;
+	}
+
+	/** element name including prefix, whether or not namespaces are processed */
+	private static String getName (XMLStreamReader reader)
+	{
+		String prefix = reader.getPrefix();
+		String local = reader.getLocalName();
+		return (prefix == null || "".equals(prefix)) ? local : prefix + ":" + local;
+	}
+
+	/**
+	 * Read all text up to the end of the current element,
+	 * including the text of nested elements.
+	 */
+	private static String readText (XMLStreamReader reader) throws XMLStreamException
+	{
+		StringBuilder text = new StringBuilder();
+		int level = 1;
+		while (level > 0)
+		{
+			int event = reader.next();
+			switch (event)
+			{
+			case XMLStreamConstants.START_ELEMENT: level++; break;
+			case XMLStreamConstants.END_ELEMENT: level--; break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				text.append (reader.getText());
+				break;
+			}
+		}
+		return text.toString();
+	}
+}
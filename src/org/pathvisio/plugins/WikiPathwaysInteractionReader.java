@@ -0,0 +1,122 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the participants from a WikiPathways findInteractions
+ * response while it is being downloaded.
+ * <p>
+ * Each interaction in the response has fields consisting of a
+ * name element followed by a value element. The value of fields named
+ * "left" or "right" is a participant name. Nothing else
+ * of the response is kept in memory.
+ */
+class WikiPathwaysInteractionReader
+{
+	/** Receives participants in document order */
+	interface Handler
+	{
+		/**
+		 * @param side "left" or "right"
+		 * @param name the participant name
+		 * @return false to stop reading
+		 */
+		boolean participant (String side, String name);
+	}
+
+	/**
+	 * Read participants from in until the end of the response,
+	 * or until the handler returns false. The stream is not closed.
+	 */
+	static void read (InputStream in, Handler handler) throws XMLStreamException
+	{
+		XMLStreamReader reader = XmlParsers.createStreamReader(in);
+		try
+		{
+			int depth = 0;
+			String side = null; // side of the field whose value comes next
+			int valueDepth = 0;
+			while (reader.hasNext())
+			{
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+				{
+					depth++;
+					if (side != null && depth == valueDepth)
+					{
+						String value = readText(reader).trim();
+						depth--;
+						String s = side;
+						side = null;
+						if (!handler.participant(s, value)) return;
+					}
+					else if ("name".equals(reader.getLocalName()))
+					{
+						String name = readText(reader).trim();
+						depth--;
+						if ("left".equals(name) || "right".equals(name))
+						{
+							side = name;
+							valueDepth = depth + 1;
+						}
+					}
+				}
+				else if (event == XMLStreamConstants.END_ELEMENT)
+				{
+					depth--;
+					// field ended without a value
+					if (depth < valueDepth - 1) side = null;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read all text up to the end of the current element,
+	 * including the text of nested elements.
+	 */
+	private static String readText (XMLStreamReader reader) throws XMLStreamException
+	{
+		StringBuilder text = new StringBuilder();
+		int level = 1;
+		while (level > 0)
+		{
+			int event = reader.next();
+			switch (event)
+			{
+			case XMLStreamConstants.START_ELEMENT: level++; break;
+			case XMLStreamConstants.END_ELEMENT: level--; break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				text.append (reader.getText());
+				break;
+			}
+		}
+		return text.toString();
+	}
+}
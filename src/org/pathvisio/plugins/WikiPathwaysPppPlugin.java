@@ -23,19 +23,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.rpc.ServiceException;
+import javax.xml.stream.XMLStreamException;
 
 import org.bridgedb.IDMapperException;
 import org.bridgedb.DataSource;
@@ -47,24 +45,15 @@ import org.pathvisio.core.model.DataNodeType;
 import org.pathvisio.core.model.ObjectType;
 import org.pathvisio.core.model.Pathway;
 import org.pathvisio.core.model.PathwayElement;
+import org.pathvisio.core.preferences.Preference;
+import org.pathvisio.core.preferences.PreferenceManager;
 import org.pathvisio.plugins.Suggestion.SuggestionException;
 import org.pathvisio.wikipathways.webservice.WSSearchResult;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import org.wikipathways.client.WikiPathwaysClient;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
-import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
+
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.RDFNode;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.vocabulary.DC;
 import com.hp.hpl.jena.vocabulary.RDF;
@@ -76,11 +65,37 @@ import com.hp.hpl.jena.vocabulary.RDFS;
  */
 public class WikiPathwaysPppPlugin extends SuggestionAdapter 
 {
+	/** Preferences for this provider */
+	enum WikiPathwaysPrefs implements Preference
+	{
+		/** maximum number of different participants in a suggestion */
+		PPP_WIKIPATHWAYS_MAX_RESULTS ("200");
+
+		WikiPathwaysPrefs (String defaultValue)
+		{
+			this.defaultValue = defaultValue;
+		}
+
+		private String defaultValue;
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		public void setDefault(String defValue) {
+			defaultValue = defValue;
+		}
+	};
+
 	final GdbManager gdbManager;
 
+	/** maximum number of different participants in a suggestion */
+	private final int maxResults;
+
 	WikiPathwaysPppPlugin (GdbManager gdbManager)
 	{
 		this.gdbManager = gdbManager;
+		maxResults = Math.max(1, PreferenceManager.getCurrent().getInt(WikiPathwaysPrefs.PPP_WIKIPATHWAYS_MAX_RESULTS));
 	}
 
 	@Override public Pathway doSuggestion(PathwayElement input) throws SuggestionException 
@@ -95,68 +110,25 @@ public class WikiPathwaysPppPlugin extends SuggestionAdapter
 
 		try
 		{	
-
-			URL url = new URL("http://wikipathways.org/wpi/webservice/webservice.php/findInteractions?query="+input.getTextLabel());
-			URLConnection connection = url.openConnection();
-	        connection.setDoOutput(true);
-			
-			BufferedReader in = new BufferedReader(
-                    new InputStreamReader(
-                    connection.getInputStream()));
-			 DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	            DocumentBuilder db = dbf.newDocumentBuilder();
-	            Document doc = db.parse(new InputSource(in));
-	            doc.getDocumentElement().normalize();
-	            
-	            NodeList wikiPathwaysInteractionsLst = doc.getElementsByTagName("ns2:name");
-	             //System.out.println(wikiPathwaysInteractionsLst.getLength());
-			            
-
-			Model model = ModelFactory.createDefaultModel();
-			String type = input.getDataNodeType();
-			String wpNS = "http://vocabularies.wikipathways.org/";
-			Resource origin = model.createResource(wpNS+type);
-			origin.addProperty(DC.identifier, input.getGeneID());
-			origin.addProperty(DC.source, input.getDataSource().toString());
-			origin.addProperty(RDFS.label, input.getTextLabel());
-			Property interaction = model.createProperty(wpNS+"interaction");
-			interaction.addProperty(RDF.type, Biopax_level3.Interaction);
-			
-			//Populate a RDF datamodel according to WP vocabulary
-			for (int counter = 0; counter <wikiPathwaysInteractionsLst.getLength(); counter++){
-				if (wikiPathwaysInteractionsLst.item(counter).getTextContent().equals("left") || wikiPathwaysInteractionsLst.item(counter).getTextContent().equals("right")) {
-				    String object = wikiPathwaysInteractionsLst.item(counter).getParentNode().getChildNodes().item(1).getTextContent();
-				    if (!(input.getTextLabel().equalsIgnoreCase(object))){
-				    	model.add(origin, interaction, object);
-				    	//System.out.println(object);
-				    }
-				}
-			}
-			
 			PathwayElement pelt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 			pelt.setMWidth (PppPlugin.DATANODE_MWIDTH);
 			pelt.setMHeight (PppPlugin.DATANODE_MHEIGHT);
-			pelt.setTextLabel(origin.getProperty(RDFS.label).getString());
-			pelt.setDataSource(input.getDataSource()); //TODO omvormen naar RDF
-			pelt.setGeneID(origin.getProperty(DC.identifier).getString());
+			pelt.setTextLabel(input.getTextLabel());
+			pelt.setDataSource(input.getDataSource());
+			pelt.setGeneID(input.getGeneID());
 			pelt.setCopyright("Copyright notice");
 			pelt.setDataNodeType(input.getDataNodeType());
 		
+			List<String> interactions = findInteractions(input);
+			// reading stops early on cancel, don't return what was read so far
+			CancellationToken.current().check();
+
 			List<PathwayElement> spokes = new ArrayList<PathwayElement>();
-			String sparqlQueryString = "PREFIX wp: <http://vocabularies.wikipathways.org/>" +
-			"PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>"+	
-			"SELECT DISTINCT ?o WHERE {?s ?p ?o .}";
-			Query query = QueryFactory.create(sparqlQueryString);
-			QueryExecution queryExecution = QueryExecutionFactory.create(query, model);
-			ResultSet resultSet = queryExecution.execSelect();
-			int a = 0;
-			while (resultSet.hasNext()) {
-				//System.out.println(a++);
-				QuerySolution candidate = resultSet.next();
-				RDFNode candidateNode = candidate.get("o");
+			for (String object : interactions)
+			{
 				PathwayElement pchildElt = PathwayElement.createPathwayElement(ObjectType.DATANODE);
 				pchildElt.setDataNodeType (DataNodeType.UNKOWN);
-				pchildElt.setTextLabel(candidateNode.toString());
+				pchildElt.setTextLabel(object);
 				//pchildElt.setDataSource (BioDataSource.CHEBI);
 				pchildElt.setGeneID("NOT_ASSIGNED");
 				pchildElt.setMWidth (PppPlugin.DATANODE_MWIDTH);
@@ -173,16 +145,63 @@ public class WikiPathwaysPppPlugin extends SuggestionAdapter
 			// TODO Auto-generated catch block
 			throw new SuggestionException(ex);
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (ParserConfigurationException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (SAXException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			// also a cancel while reading
+			throw new SuggestionException(e);
+		} catch (XMLStreamException e) {
+			throw new SuggestionException(e);
+		}
+	}
+
+	/**
+	 * Query WikiPathways for the interactions of input, by label.
+	 * @return the names of the other participants, each name once,
+	 * in the order they were found. At most PPP_WIKIPATHWAYS_MAX_RESULTS names;
+	 * reading the response stops as soon as that many have been found.
+	 */
+	public List<String> findInteractions(PathwayElement input) throws IOException, XMLStreamException
+	{
+		final String label = input.getTextLabel();
+		final Set<String> found = new LinkedHashSet<String>();
+		final CancellationToken token = CancellationToken.current();
+		InputStream response = HttpTransport.get("http://wikipathways.org/wpi/webservice/webservice.php/findInteractions?query="+input.getTextLabel());
+		try {
+			WikiPathwaysInteractionReader.read(response, new WikiPathwaysInteractionReader.Handler()
+			{
+				public boolean participant(String side, String object)
+				{
+					if (!(label.equalsIgnoreCase(object))){
+						found.add(object);
+					}
+					return found.size() < maxResults && !token.isCancelled();
+				}
+			});
+		} finally {
+			response.close();
+		}
+		return new ArrayList<String>(found);
+	}
+
+	/**
+	 * Describe the interactions found by findInteractions as RDF,
+	 * according to the WikiPathways vocabulary.
+	 * Not used for suggestions, only for callers that want to export them.
+	 */
+	public static Model toRdf(PathwayElement input, List<String> participants)
+	{
+		Model model = ModelFactory.createDefaultModel();
+		String type = input.getDataNodeType();
+		String wpNS = "http://vocabularies.wikipathways.org/";
+		Resource origin = model.createResource(wpNS+type);
+		origin.addProperty(DC.identifier, input.getGeneID());
+		origin.addProperty(DC.source, input.getDataSource().toString());
+		origin.addProperty(RDFS.label, input.getTextLabel());
+		Property interaction = model.createProperty(wpNS+"interaction");
+		interaction.addProperty(RDF.type, Biopax_level3.Interaction);
+		for (String object : participants)
+		{
+			model.add(origin, interaction, object);
 		}
-		return null;	
+		return model;
 	}
 
 	/**
@@ -191,6 +210,7 @@ public class WikiPathwaysPppPlugin extends SuggestionAdapter
 	 */
 	public static void main(String[] args) throws IOException, ConverterException, SuggestionException
 	{
+		PreferenceManager.init();
 		WikiPathwaysPppPlugin hmdbPpp = new WikiPathwaysPppPlugin(null);
 
 		PathwayElement test = PathwayElement.createPathwayElement(ObjectType.DATANODE);
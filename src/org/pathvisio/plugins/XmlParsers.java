@@ -0,0 +1,178 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.pathvisio.core.debug.Logger;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * XML parsers shared by all suggestion providers.
+ * <p>
+ * The factories are looked up and configured once. DOM builders are kept
+ * in a pool and reset after use, so a request normally doesn't create
+ * a parser at all. StAX readers come from a single shared factory.
+ * <p>
+ * All parsers are namespace aware (except the lenient StAX factory),
+ * use secure processing, and never load external entities or DTDs,
+ * so a response can't make us read local files or other URLs.
+ */
+public class XmlParsers
+{
+	/** maximum number of idle DOM builders kept */
+	private static final int MAX_IDLE = 8;
+
+	private static final DocumentBuilderFactory domFactory = createDomFactory();
+	private static final Queue<DocumentBuilder> idle = new ConcurrentLinkedQueue<DocumentBuilder>();
+	private static final AtomicInteger idleCount = new AtomicInteger();
+
+	private static final XMLInputFactory staxFactory = createStaxFactory(true);
+	private static final XMLInputFactory lenientStaxFactory = createStaxFactory(false);
+
+	private XmlParsers() {}
+
+	private static DocumentBuilderFactory createDomFactory()
+	{
+		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+		dbf.setNamespaceAware(true);
+		dbf.setExpandEntityReferences(false);
+		setFeature (dbf, XMLConstants.FEATURE_SECURE_PROCESSING, true);
+		setFeature (dbf, "http://xml.org/sax/features/external-general-entities", false);
+		setFeature (dbf, "http://xml.org/sax/features/external-parameter-entities", false);
+		setFeature (dbf, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+		return dbf;
+	}
+
+	/** not every parser knows every feature, those it doesn't know are skipped */
+	private static void setFeature (DocumentBuilderFactory dbf, String feature, boolean value)
+	{
+		try
+		{
+			dbf.setFeature(feature, value);
+		}
+		catch (ParserConfigurationException ex)
+		{
+			Logger.log.warn ("XML parser does not support " + feature);
+		}
+	}
+
+	private static XMLInputFactory createStaxFactory(boolean namespaceAware)
+	{
+		XMLInputFactory xif = XMLInputFactory.newInstance();
+		xif.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, namespaceAware);
+		xif.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		// otherwise the external DTD of a DOCTYPE is still fetched
+		xif.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		xif.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+		// in case a parser loads it anyway, give it nothing to read
+		xif.setXMLResolver(new XMLResolver()
+		{
+			public Object resolveEntity(String publicID, String systemID, String baseURI, String namespace)
+			{
+				return new ByteArrayInputStream(new byte[0]);
+			}
+		});
+		return xif;
+	}
+
+	/**
+	 * Parse a complete document with a pooled DOM builder.
+	 * The stream is not closed.
+	 */
+	public static Document parse (InputStream in) throws IOException, SAXException
+	{
+		DocumentBuilder db = borrow();
+		try
+		{
+			return db.parse(in);
+		}
+		finally
+		{
+			release (db);
+		}
+	}
+
+	private static DocumentBuilder borrow() throws SAXException
+	{
+		DocumentBuilder db = idle.poll();
+		if (db != null)
+		{
+			idleCount.decrementAndGet();
+			return db;
+		}
+		// factories are not guaranteed to be thread-safe
+		synchronized (domFactory)
+		{
+			try
+			{
+				return domFactory.newDocumentBuilder();
+			}
+			catch (ParserConfigurationException ex)
+			{
+				throw new SAXException(ex);
+			}
+		}
+	}
+
+	private static void release (DocumentBuilder db)
+	{
+		db.reset();
+		if (idleCount.incrementAndGet() <= MAX_IDLE)
+		{
+			idle.offer (db);
+		}
+		else
+		{
+			idleCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Create a namespace aware streaming reader.
+	 * The caller must close the reader, which does not close the stream.
+	 */
+	public static XMLStreamReader createStreamReader (InputStream in) throws XMLStreamException
+	{
+		return staxFactory.createXMLStreamReader(in);
+	}
+
+	/**
+	 * Create a streaming reader that does not process namespaces,
+	 * for documents that use undeclared prefixes. Element names
+	 * are then reported with their prefix as local name.
+	 */
+	public static XMLStreamReader createLenientStreamReader (InputStream in) throws XMLStreamException
+	{
+		return lenientStaxFactory.createXMLStreamReader(in);
+	}
+}
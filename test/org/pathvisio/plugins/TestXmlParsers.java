@@ -0,0 +1,108 @@
+// PathVisio,
+// a tool for data visualization and analysis using Biological Pathways
+// Copyright 2006-2009 BiGCaT Bioinformatics
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+//
+package org.pathvisio.plugins;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+
+/**
+ * Checks that the shared parsers don't load the external DTD of a response.
+ * The DTD gives the root element a default attribute, which only
+ * shows up in the parsed document if the DTD was read.
+ */
+public class TestXmlParsers extends TestCase
+{
+	private File dtd;
+
+	@Override protected void setUp() throws IOException
+	{
+		dtd = File.createTempFile("xmlparsers", ".dtd");
+		write (dtd, "<!ATTLIST r loaded CDATA \"yes\">");
+	}
+
+	@Override protected void tearDown()
+	{
+		dtd.delete();
+	}
+
+	/** a document whose DOCTYPE points at the local DTD file */
+	private InputStream document() throws IOException
+	{
+		String xml = "<?xml version=\"1.0\"?>\n" +
+				"<!DOCTYPE r SYSTEM \"" + dtd.toURI() + "\">\n" +
+				"<r>text</r>";
+		return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+	}
+
+	public void testDomIgnoresExternalDtd() throws Exception
+	{
+		Document doc = XmlParsers.parse(document());
+		assertEquals ("", doc.getDocumentElement().getAttribute("loaded"));
+	}
+
+	public void testStaxIgnoresExternalDtd() throws Exception
+	{
+		assertNull (readRootAttribute(XmlParsers.createStreamReader(document())));
+	}
+
+	public void testLenientStaxIgnoresExternalDtd() throws Exception
+	{
+		assertNull (readRootAttribute(XmlParsers.createLenientStreamReader(document())));
+	}
+
+	/** the value of the loaded attribute of the root element, or null if it has none */
+	private static String readRootAttribute(XMLStreamReader reader) throws Exception
+	{
+		try
+		{
+			while (reader.next() != XMLStreamConstants.START_ELEMENT) {}
+			for (int i = 0; i < reader.getAttributeCount(); ++i)
+			{
+				if ("loaded".equals(reader.getAttributeLocalName(i))) return reader.getAttributeValue(i);
+			}
+			return null;
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private static void write (File f, String text) throws IOException
+	{
+		OutputStream out = new FileOutputStream(f);
+		try
+		{
+			out.write (text.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+}